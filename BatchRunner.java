@@ -0,0 +1,317 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Пакетный режим: команды читаются из файла или stdin, по одной на строку,
+// и выполняются без меню и подсказок. Вывод и записи журнала копятся в буферах
+// и сбрасываются большими блоками, в конце печатается сводка.
+//
+// Команды (значения с пробелами берутся в кавычки, \" и \\ внутри кавычек - экранирование):
+//   add <название> <автор> <жанр> [год]
+//   edit <название> [name=<название>] [author=<автор>] [genre=<жанр>] [year=<год>]
+//   remove <название>
+//   find <название>
+//   find-author <автор>
+//   import <файл, папка или шаблон вида папка/*.txt>
+//   save <файл>
+//   merge-genre <жанр> <жанр, в который перенести книги>
+//   begin ... commit - команды add, edit и remove между ними применяются вместе
+//                      или не применяются вовсе (см. Library.applyBatch)
+// Пустые строки и строки, начинающиеся с #, пропускаются.
+public class BatchRunner {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final String[] COMMANDS = {"add", "edit", "remove", "find", "find-author", "import", "save",
+            "merge-genre", "commit"};
+
+    private final Library library;
+    // журнал библиотеки; null, если изменения не журналируются
+    private final BookJournal journal;
+    private final int[] executed = new int[COMMANDS.length];
+    private int failedCount;
+    // команды открытого блока begin; null вне блока
+    private BookBatch block;
+    private int blockLine;
+    private boolean blockFailed;
+
+    public BatchRunner(Library library, BookJournal journal) {
+        this.library = library;
+        this.journal = journal;
+    }
+
+    // scriptPath "-" - команды из стандартного ввода
+    public void run(String scriptPath) throws IOException {
+        PrintStream console = System.out;
+        PrintStream buffered = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE),
+                false, StandardCharsets.UTF_8);
+        System.setOut(buffered);
+        if (journal != null) {
+            journal.beginBatch();
+        }
+
+        long startTime = System.nanoTime();
+        int lineNumber = 0;
+        try (BufferedReader reader = scriptPath.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(scriptPath), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    execute(tokenize(trimmed), lineNumber);
+                } catch (RuntimeException e) {
+                    failedCount++;
+                    buffered.println("Строка " + lineNumber + ": " + e.getMessage());
+                }
+            }
+            if (block != null) {
+                failedCount++;
+                buffered.println("Строка " + blockLine + ": блок begin не закрыт командой commit и не применён");
+            }
+        } finally {
+            if (journal != null) {
+                journal.endBatch();
+            }
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            printSummary(buffered, lineNumber, elapsedMillis);
+            buffered.flush();
+            System.setOut(console);
+        }
+    }
+
+    private void execute(List<String> tokens, int lineNumber) {
+        String command = tokens.get(0);
+        if (block != null && !command.equals("commit")) {
+            addToBlock(tokens);
+            return;
+        }
+        switch (command) {
+            case "begin" -> {
+                requireArguments(tokens, 1, 1);
+                block = new BookBatch();
+                blockLine = lineNumber;
+                blockFailed = false;
+                return;
+            }
+            case "commit" -> {
+                requireArguments(tokens, 1, 1);
+                if (block == null) {
+                    throw new IllegalArgumentException("commit без begin");
+                }
+                BookBatch batch = block;
+                block = null;
+                if (blockFailed) {
+                    throw new IllegalArgumentException("блок со строки " + blockLine + " не применён: в нём есть ошибки");
+                }
+                library.applyBatch(batch);
+            }
+            case "merge-genre" -> {
+                requireArguments(tokens, 3, 3);
+                int moved = library.mergeGenre(tokens.get(1), tokens.get(2));
+                System.out.println("Жанр \"" + tokens.get(1) + "\" объединён с \"" + tokens.get(2) + "\": " + moved + " книг");
+            }
+            case "add" -> library.addBook(newBook(tokens));
+            case "edit" -> editBook(library, tokens);
+            case "remove" -> {
+                requireArguments(tokens, 2, 2);
+                // removeBookByName сообщает об отсутствии книги только в вывод
+                if (library.findBookByName(tokens.get(1)) == null) {
+                    throw new IllegalArgumentException("Книга \"" + tokens.get(1) + "\" не найдена.");
+                }
+                library.removeBookByName(tokens.get(1));
+            }
+            case "find" -> {
+                requireArguments(tokens, 2, 2);
+                Book book = library.findBookByName(tokens.get(1));
+                if (book == null) {
+                    throw new IllegalArgumentException("Книга \"" + tokens.get(1) + "\" не найдена.");
+                }
+                book.printInfo();
+            }
+            case "find-author" -> {
+                requireArguments(tokens, 2, 2);
+                library.findBooksByAuthor(tokens.get(1));
+            }
+            case "import" -> {
+                requireArguments(tokens, 2, 2);
+                importBooks(library, tokens.get(1));
+            }
+            case "save" -> {
+                requireArguments(tokens, 2, 2);
+                library.saveBooksToFile(tokens.get(1));
+            }
+            default -> throw new IllegalArgumentException("Неизвестная команда: " + command);
+        }
+        executed[commandIndex(command)]++;
+    }
+
+    // строка с ошибкой портит весь блок: он не будет применён
+    private void addToBlock(List<String> tokens) {
+        try {
+            switch (tokens.get(0)) {
+                case "add" -> block.add(newBook(tokens));
+                case "edit" -> {
+                    EditOptions options = parseEdit(tokens);
+                    block.edit(tokens.get(1), options.name, options.author, options.genre, options.year);
+                }
+                case "remove" -> {
+                    requireArguments(tokens, 2, 2);
+                    block.remove(tokens.get(1));
+                }
+                default -> throw new IllegalArgumentException(
+                        "в блоке begin/commit допустимы только add, edit и remove, а не " + tokens.get(0));
+            }
+        } catch (RuntimeException e) {
+            blockFailed = true;
+            throw e;
+        }
+    }
+
+    private void printSummary(PrintStream out, int lineCount, long elapsedMillis) {
+        int total = 0;
+        for (int count : executed) {
+            total += count;
+        }
+
+        out.println();
+        out.println("=== ИТОГИ ПАКЕТА ===");
+        out.println("Прочитано строк: " + lineCount);
+        out.println("Выполнено команд: " + total + ", с ошибкой: " + failedCount);
+        for (int i = 0; i < COMMANDS.length; i++) {
+            if (executed[i] > 0) {
+                out.println("  " + COMMANDS[i] + ": " + executed[i]);
+            }
+        }
+        long perSecond = (elapsedMillis > 0) ? (total + failedCount) * 1000L / elapsedMillis : total + failedCount;
+        out.println("Время: " + elapsedMillis + " мс (" + perSecond + " команд/с)");
+        out.println("Книг в библиотеке: " + library.countBooks());
+    }
+
+    private static int commandIndex(String command) {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            if (COMMANDS[i].equals(command)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная команда: " + command);
+    }
+
+    // add <название> <автор> <жанр> [год]
+    static Book newBook(List<String> tokens) {
+        requireArguments(tokens, 4, 5);
+        Book book = new Book(tokens.get(1), tokens.get(2), tokens.get(3));
+        if (tokens.size() == 5) {
+            book.setDate(parseYear(tokens.get(4)));
+        }
+        return book;
+    }
+
+    // edit <название> [name=<название>] [author=<автор>] [genre=<жанр>] [year=<год>]
+    static void editBook(Library library, List<String> tokens) {
+        EditOptions options = parseEdit(tokens);
+        library.editBook(tokens.get(1), options.name, options.author, options.genre, options.year);
+    }
+
+    private static EditOptions parseEdit(List<String> tokens) {
+        requireArguments(tokens, 2, 6);
+        EditOptions options = new EditOptions();
+        for (String option : tokens.subList(2, tokens.size())) {
+            int separator = option.indexOf('=');
+            String value = (separator < 0) ? "" : option.substring(separator + 1);
+            switch (separator < 0 ? option : option.substring(0, separator)) {
+                case "name" -> options.name = value;
+                case "author" -> options.author = value;
+                case "genre" -> options.genre = value;
+                case "year" -> options.year = parseYear(value);
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + option);
+            }
+        }
+        return options;
+    }
+
+    // новые значения из параметров edit; null - не менять
+    private static class EditOptions {
+        private String name;
+        private String author;
+        private String genre;
+        private Integer year;
+    }
+
+    // import <файл, папка или шаблон вида папка/*.txt>
+    static void importBooks(Library library, String source) {
+        if (new File(source).isFile()) {
+            library.importBooksFromFile(source);
+        } else {
+            library.importBooksFromFiles(source);
+        }
+    }
+
+    static void requireArguments(List<String> tokens, int min, int max) {
+        if (tokens.size() < min || tokens.size() > max) {
+            throw new IllegalArgumentException("Неверное число аргументов у команды " + tokens.get(0));
+        }
+    }
+
+    private static int parseYear(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный год: " + value);
+        }
+    }
+
+    // слова через пробел; в кавычках пробелы допустимы
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean inQuotes = false;
+        boolean hasToken = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '\\' && i + 1 < line.length()) {
+                    token.append(line.charAt(++i));
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                hasToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (hasToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    hasToken = false;
+                }
+            } else {
+                token.append(c);
+                hasToken = true;
+            }
+        }
+
+        if (inQuotes) {
+            throw new IllegalArgumentException("Незакрытая кавычка");
+        }
+        if (hasToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
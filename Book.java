@@ -1,11 +1,26 @@
 import java.time.LocalDate;
 
 public class Book {
+    private static final int YEAR_AT_STARTUP = LocalDate.now().getYear();
+    private static final short UNKNOWN_YEAR = -1;
+    // жанры и авторы повторяются у многих книг, поэтому хранятся в общих словарях
+    private static final StringDictionary GENRES = new StringDictionary();
+    private static final StringDictionary AUTHORS = new StringDictionary();
+    private static final StringDictionary AUTHOR_KEYS = new StringDictionary();
+
     private String name;
     private String genre;
     private String author;
-    private LocalDate publicationDate;
-
+    // от даты издания используется только год, поэтому хранится он один; -1 - неизвестен
+    private short year = UNKNOWN_YEAR;
+    // нормализованный ключ (название + автор), пересчитывается только в сеттерах
+    private Key key;
+    // библиотека, в которой лежит книга: ей сообщается о смене года
+    private Library library;
+    // место книги в порядке её жанра (см. Library.addToGenre)
+    private long genreOrder;
+    // копия из снимка библиотеки: только для чтения
+    private boolean readOnly;
 
     public Book(String name, String author, String genre, LocalDate publicationDate) {
         setName(name);
@@ -26,33 +41,60 @@ public class Book {
         this(name, "Неизвестен", "Не указан", null);
     }
 
+    // копия для снимков библиотеки (см. LibrarySnapshot): поля и ключ общие, библиотеки нет.
+    // Снимки делят копии между версиями, поэтому сеттеры у копии не работают
+    private Book(Book source) {
+        this.name = source.name;
+        this.genre = source.genre;
+        this.author = source.author;
+        this.year = source.year;
+        this.key = source.key;
+        this.genreOrder = source.genreOrder;
+        this.readOnly = true;
+    }
+
+    Book detachedCopy() {
+        return new Book(this);
+    }
+
     // сеттеры с проверкой
     public void setName(String name) {
+        checkWritable();
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Название книги не может быть пустым");
         }
         this.name = name.trim();
+        this.key = (author != null) ? Key.forBook(this.name, author) : null;
     }
 
     public void setPublicationDate(LocalDate publicationDate) {
-        if (publicationDate != null && publicationDate.isAfter(LocalDate.now())) {
+        checkWritable();
+        // LocalDate.now() дорогой, а годы до текущего заведомо не в будущем
+        if (publicationDate != null && publicationDate.getYear() >= YEAR_AT_STARTUP
+                && publicationDate.isAfter(LocalDate.now())) {
             throw new IllegalArgumentException("Дата публикации не может быть в будущем");
         }
-        this.publicationDate = publicationDate;
+        if (publicationDate != null && publicationDate.getYear() <= 0) {
+            throw new IllegalArgumentException("Год издания должен быть положительным");
+        }
+        changeYear((publicationDate != null) ? publicationDate.getYear() : UNKNOWN_YEAR);
     }
 
     public void setGenre(String genre) {
+        checkWritable();
         if (genre == null || genre.trim().isEmpty()) {
             throw new IllegalArgumentException("Жанр не может быть пустым");
         }
-        this.genre = genre.trim();
+        this.genre = GENRES.intern(genre.trim());
     }
 
     public void setAuthor(String author) {
+        checkWritable();
         if (author == null || author.trim().isEmpty()) {
             throw new IllegalArgumentException("Автор не может быть пустым");
         }
-        this.author = author.trim();
+        this.author = AUTHORS.intern(author.trim());
+        this.key = Key.forBook(name, this.author);
     }
 
     // Геттеры
@@ -64,16 +106,21 @@ public class Book {
         return this.name;
     }
 
+    // дата собирается при каждом вызове; где нужен только год, лучше getDate()
     public LocalDate getPublicationDate() {
-        return this.publicationDate;
+        return (year > 0) ? LocalDate.of(year, 1, 1) : null;
     }
 
     public String getAuthor() {
         return this.author;
     }
 
+    public Key getKey() {
+        return this.key;
+    }
+
     public void printInfo() {
-        String dateInfo = (publicationDate != null) ? String.valueOf(publicationDate.getYear()) : "неизвестен";
+        String dateInfo = (year > 0) ? String.valueOf(year) : "неизвестен";
         System.out.println("Название книги: " + this.name +
                 "; Автор: " + this.author +
                 "; Жанр: " + this.genre +
@@ -81,16 +128,47 @@ public class Book {
     }
 
     public int getDate() {
-        return (publicationDate != null) ? publicationDate.getYear() : -1;
+        return year;
     }
 
     public void setDate(int year) {
+        checkWritable();
         if (year <= 0) {
-            this.publicationDate = null;
-        } else if (year > LocalDate.now().getYear()) {
+            changeYear(UNKNOWN_YEAR);
+        } else if (year >= YEAR_AT_STARTUP && year > LocalDate.now().getYear()) {
             throw new IllegalArgumentException("Год не может быть в будущем");
         } else {
-            this.publicationDate = LocalDate.of(year, 1, 1);
+            changeYear(year);
+        }
+    }
+
+    void setLibrary(Library library) {
+        this.library = library;
+    }
+
+    long getGenreOrder() {
+        return genreOrder;
+    }
+
+    void setGenreOrder(long genreOrder) {
+        this.genreOrder = genreOrder;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Книга из снимка библиотеки не изменяется; используйте editBook");
+        }
+    }
+
+    // библиотека держит книги упорядоченными по году, поэтому узнаёт и о начале смены
+    private void changeYear(int newYear) {
+        boolean notify = library != null && year != newYear;
+        if (notify) {
+            library.yearChanging(this);
+        }
+        this.year = (short) newYear;
+        if (notify) {
+            library.yearChanged(this);
         }
     }
 
@@ -98,13 +176,58 @@ public class Book {
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
-        Book book = (Book) obj;
-        return name.equalsIgnoreCase(book.name) &&
-                author.equalsIgnoreCase(book.author);
+        return key.equals(((Book) obj).key);
     }
 
     @Override
     public int hashCode() {
-        return (name.toLowerCase() + author.toLowerCase()).hashCode();
+        return key.hashCode();
+    }
+
+    static String normalize(String value) {
+        return value.trim().toLowerCase();
+    }
+
+    // Неизменяемый ключ идентичности книги: название и автор без учёта регистра
+    public static final class Key {
+        private final String name;
+        private final String author;
+        private final int hash;
+
+        public Key(String name, String author) {
+            this(normalize(name), normalize(author), true);
+        }
+
+        private Key(String name, String author, boolean normalized) {
+            this.name = name;
+            this.author = author;
+            this.hash = 31 * this.name.hashCode() + this.author.hashCode();
+        }
+
+        // ключ книги: нормализованный автор общий для всех его книг
+        static Key forBook(String name, String author) {
+            return new Key(normalize(name), AUTHOR_KEYS.intern(normalize(author)), true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return hash == other.hash && name.equals(other.name) && author.equals(other.author);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 }
\ No newline at end of file
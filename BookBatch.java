@@ -0,0 +1,115 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Набор изменений библиотеки для Library.applyBatch: применяется целиком или не применяется вовсе.
+// Книга для правки и удаления ищется по названию (и по автору, если он указан)
+// в момент выполнения операции, то есть с учётом предыдущих операций пакета.
+// Пустые новые значения в edit, как и в Library.editBook, означают "не менять".
+public class BookBatch {
+    enum Type { ADD, EDIT, REMOVE }
+
+    static final class Operation {
+        final Type type;
+        // ADD
+        final Book book;
+        // EDIT, REMOVE: книга; author == null - первая книга с таким названием
+        final String name;
+        final String author;
+        // EDIT
+        final String newName;
+        final String newAuthor;
+        final String newGenre;
+        final Integer newYear;
+
+        private Operation(Type type, Book book, String name, String author,
+                          String newName, String newAuthor, String newGenre, Integer newYear) {
+            this.type = type;
+            this.book = book;
+            this.name = name;
+            this.author = author;
+            this.newName = newName;
+            this.newAuthor = newAuthor;
+            this.newGenre = newGenre;
+            this.newYear = newYear;
+        }
+
+        String describe() {
+            return switch (type) {
+                case ADD -> "добавление \"" + book.getName() + "\"";
+                case EDIT -> "правка \"" + name + "\"";
+                case REMOVE -> "удаление \"" + name + "\"";
+            };
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    public BookBatch add(Book book) {
+        operations.add(new Operation(Type.ADD, book, null, null, null, null, null, null));
+        return this;
+    }
+
+    public BookBatch edit(String name, String newName, String newAuthor, String newGenre, Integer newYear) {
+        return edit(name, null, newName, newAuthor, newGenre, newYear);
+    }
+
+    // правка книги с точным названием и автором
+    public BookBatch edit(String name, String author, String newName, String newAuthor, String newGenre,
+                          Integer newYear) {
+        operations.add(new Operation(Type.EDIT, null, name, author, newName, newAuthor, newGenre, newYear));
+        return this;
+    }
+
+    // как removeBookByName: все книги с этим названием из жанра первой найденной
+    public BookBatch remove(String name) {
+        return remove(name, null);
+    }
+
+    public BookBatch remove(String name, String author) {
+        operations.add(new Operation(Type.REMOVE, null, name, author, null, null, null, null));
+        return this;
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    // Проверки, которым не нужна библиотека. Сообщает сразу обо всех ошибках пакета;
+    // конфликты с содержимым библиотеки (нет книги, дубликат) выясняются при применении.
+    void validate() {
+        List<String> errors = new ArrayList<>();
+        int currentYear = LocalDate.now().getYear();
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            String prefix = "операция " + (i + 1) + ": ";
+            if (operation.type == Type.ADD) {
+                if (operation.book == null) {
+                    errors.add(prefix + "книга не может быть null");
+                }
+                continue;
+            }
+            if (operation.name == null || operation.name.trim().isEmpty()) {
+                errors.add(prefix + "название книги не может быть пустым");
+            }
+            if (operation.author != null && operation.author.trim().isEmpty()) {
+                errors.add(prefix + "автор не может быть пустым");
+            }
+            if (operation.newYear != null && (operation.newYear <= 0 || operation.newYear > currentYear)) {
+                errors.add(prefix + "некорректный год " + operation.newYear);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Пакет изменений не прошёл проверку: " + String.join("; ", errors));
+        }
+    }
+}
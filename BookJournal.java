@@ -0,0 +1,375 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Журнал изменений библиотеки поверх двоичного снимка.
+// Каждое изменение дописывается в конец файла журнала <prefix>.<поколение>.
+// Снимок хранит номер поколения, которое в него уже вошло, поэтому при запуске
+// воспроизводятся только более новые файлы журнала.
+// Когда журнал вырастает больше порога, в фоне пишется новый снимок,
+// а старые файлы журнала удаляются.
+//
+// Запись: int длина, byte тип, далее поля (строки - varint длина + UTF-8):
+//   ADD    - название, автор, жанр, short год
+//   EDIT   - старое название, старый автор, название, автор, жанр, short год
+//   REMOVE - название, автор
+public class BookJournal implements Closeable {
+    private static final byte ADD = 1;
+    private static final byte EDIT = 2;
+    private static final byte REMOVE = 3;
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
+    private final String snapshotPath;
+    private final String journalPrefix;
+    private final long compactionThreshold;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Library library;
+    private FileChannel channel;
+    private long generation;
+    private Future<?> compaction;
+    // записи пакетного режима, ещё не сброшенные в файл; null вне пакета
+    private ByteBuffer batch;
+    // число незавершённых beginBatch: пакеты бывают вложенными (пакет команд BatchRunner
+    // и внутри него пакет изменений или импорт), а сбрасывается только внешний
+    private int batchDepth;
+
+    public BookJournal(String snapshotPath, String journalPrefix, long compactionThreshold) {
+        this.snapshotPath = snapshotPath;
+        this.journalPrefix = journalPrefix;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    // true, если снимок или журнал изменялись позже указанного файла
+    public boolean isNewerThan(String filePath) {
+        long lastModified = new File(snapshotPath).lastModified();
+        for (Path journalFile : journalFiles().values()) {
+            lastModified = Math.max(lastModified, journalFile.toFile().lastModified());
+        }
+        File file = new File(filePath);
+        return lastModified > 0 && (!file.exists() || lastModified >= file.lastModified());
+    }
+
+    // Загружает снимок, воспроизводит журнал и начинает журналировать изменения библиотеки.
+    public void open(Library library) throws IOException {
+        long snapshotGeneration = 0;
+        int loadedCount = 0;
+        if (new File(snapshotPath).exists()) {
+            snapshotGeneration = BookSnapshot.readGeneration(snapshotPath);
+            // снимок загружается пакетом, как в Library.loadSnapshot; addBook - только для записей журнала
+            loadedCount = library.addAll(BookSnapshot.read(snapshotPath));
+        }
+
+        // файлы, уже вошедшие в снимок, могли остаться после сбоя во время сжатия
+        deleteJournals(snapshotGeneration);
+
+        int replayedCount = 0;
+        generation = snapshotGeneration + 1;
+        for (var entry : journalFiles().entrySet()) {
+            if (entry.getKey() > snapshotGeneration) {
+                replayedCount += replay(library, entry.getValue());
+                generation = entry.getKey();
+            }
+        }
+
+        System.out.println("Успешно загружено " + loadedCount + " книг из снимка: " + snapshotPath +
+                ", применено изменений из журнала: " + replayedCount);
+        attach(library);
+    }
+
+    // Сохраняет текущее состояние библиотеки в снимок, сбрасывает журнал и начинает журналировать.
+    public void reset(Library library) throws IOException {
+        generation = Math.max(generation, lastGeneration());
+        BookSnapshot.write(snapshotPath, library.snapshot().getBooksByGenre(), generation);
+        deleteJournals(generation);
+        generation++;
+        attach(library);
+    }
+
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    public void logAdd(Book book) {
+        append(ADD, null, null, book);
+    }
+
+    public void logEdit(String oldName, String oldAuthor, Book book) {
+        append(EDIT, oldName, oldAuthor, book);
+    }
+
+    public void logRemove(Book book) {
+        append(REMOVE, null, null, book);
+    }
+
+    // В пакетном режиме записи копятся в памяти и пишутся в файл блоками по 64 КБ,
+    // а не отдельным вызовом write на каждое изменение. При сбое посреди пакета
+    // теряются изменения из несброшенного буфера.
+    // Вызовы могут быть вложенными: буфер сбрасывается, когда заканчивается внешний пакет.
+    public void beginBatch() {
+        if (batchDepth++ == 0) {
+            batch = ByteBuffer.allocate(BATCH_BUFFER_SIZE);
+        }
+    }
+
+    public void endBatch() throws IOException {
+        if (batchDepth == 0 || --batchDepth > 0) {
+            return;
+        }
+        flushBatch();
+        batch = null;
+        if (channel != null && channel.size() >= compactionThreshold) {
+            startCompaction();
+        }
+    }
+
+    // Ждёт завершения фонового сжатия и закрывает журнал.
+    @Override
+    public void close() throws IOException {
+        // незавершённый пакет сбрасывается, на какой бы глубине он ни был
+        if (batchDepth > 0) {
+            batchDepth = 1;
+            endBatch();
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (library != null) {
+            library.setJournal(null);
+        }
+    }
+
+    private void attach(Library library) throws IOException {
+        this.library = library;
+        openChannel();
+        library.setJournal(this);
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(journalPath(generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void append(byte type, String oldName, String oldAuthor, Book book) {
+        byte[] name = utf8(book.getName());
+        byte[] author = utf8(book.getAuthor());
+        byte[] genre = type == REMOVE ? null : utf8(book.getGenre());
+        byte[] previousName = type == EDIT ? utf8(oldName) : null;
+        byte[] previousAuthor = type == EDIT ? utf8(oldAuthor) : null;
+
+        int capacity = 4 + 1 + 2 + 5 * 5 + name.length + author.length
+                + (genre != null ? genre.length : 0)
+                + (previousName != null ? previousName.length + previousAuthor.length : 0);
+        ByteBuffer entry = ByteBuffer.allocate(capacity);
+        entry.position(4);
+        entry.put(type);
+        if (type == EDIT) {
+            putBytes(entry, previousName);
+            putBytes(entry, previousAuthor);
+        }
+        putBytes(entry, name);
+        putBytes(entry, author);
+        if (type != REMOVE) {
+            putBytes(entry, genre);
+            entry.putShort((short) book.getDate());
+        }
+        entry.putInt(0, entry.position() - 4);
+        entry.flip();
+
+        try {
+            if (batch != null && entry.remaining() <= batch.remaining()) {
+                batch.put(entry);
+                return;
+            }
+            // буфер пакета полон: сначала его содержимое, затем эта запись, чтобы не нарушить порядок
+            flushBatch();
+            writeFully(entry);
+            if (channel.size() >= compactionThreshold) {
+                startCompaction();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка записи в журнал: " + e.getMessage(), e);
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        if (batch == null || batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        writeFully(batch);
+        batch.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Вызывается в потоке, который изменяет библиотеку: здесь журнал переключается
+    // на новый файл и берётся снимок книг, а запись снимка идёт в фоне.
+    private void startCompaction() throws IOException {
+        if (compaction != null && !compaction.isDone()) {
+            return;
+        }
+
+        long compactedGeneration = generation;
+        // снимок книг берётся за O(1), копировать их здесь больше не нужно
+        List<BookVector> books = library.currentSnapshot().getBooksByGenre();
+        channel.close();
+        generation++;
+        openChannel();
+
+        compaction = compactor.submit(() -> {
+            try {
+                BookSnapshot.write(snapshotPath, books, compactedGeneration);
+                deleteJournals(compactedGeneration);
+            } catch (IOException e) {
+                System.out.println("Ошибка при сжатии журнала: " + e.getMessage());
+            }
+        });
+    }
+
+    private int replay(Library library, Path journalFile) throws IOException {
+        int count = 0;
+        long validLength = 0;
+        // файл читается в кучу, а не отображается: ниже его, возможно, придётся обрезать
+        ByteBuffer buffer = BookRecordParser.readFile(journalFile.toString());
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer entry = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            apply(library, entry);
+            validLength = buffer.position();
+            count++;
+        }
+
+        // недописанная запись в конце (сбой во время записи) отбрасывается
+        if (validLength < Files.size(journalFile)) {
+            try (FileChannel writeChannel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                writeChannel.truncate(validLength);
+            }
+        }
+        return count;
+    }
+
+    private static void apply(Library library, ByteBuffer entry) {
+        byte type = entry.get();
+        switch (type) {
+            case ADD -> {
+                String name = getString(entry);
+                String author = getString(entry);
+                String genre = getString(entry);
+                LocalDate date = toDate(entry.getShort());
+                // книга уже есть (например, журнал после сбоя воспроизводится поверх снимка, в который она вошла)
+                if (library.findBook(new Book.Key(name, author)) == null) {
+                    library.addBook(new Book(name, author, genre, date));
+                }
+            }
+            case EDIT -> {
+                Book.Key oldKey = new Book.Key(getString(entry), getString(entry));
+                String name = getString(entry);
+                String author = getString(entry);
+                String genre = getString(entry);
+                Book book = library.findBook(oldKey);
+                if (book != null) {
+                    // запись хранит год целиком: -1 означает, что год сбросили
+                    library.restoreBook(book, name, author, genre, toDate(entry.getShort()));
+                }
+            }
+            case REMOVE -> {
+                Book book = library.findBook(new Book.Key(getString(entry), getString(entry)));
+                if (book != null) {
+                    library.removeBook(book);
+                }
+            }
+            default -> throw new IllegalStateException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    private TreeMap<Long, Path> journalFiles() {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        Path prefix = Path.of(journalPrefix);
+        Path directory = prefix.toAbsolutePath().getParent();
+        String baseName = prefix.getFileName().toString() + ".";
+        File[] candidates = directory.toFile().listFiles();
+        if (candidates == null) {
+            return files;
+        }
+        for (File file : candidates) {
+            String fileName = file.getName();
+            if (fileName.startsWith(baseName)) {
+                try {
+                    files.put(Long.parseLong(fileName.substring(baseName.length())), file.toPath());
+                } catch (NumberFormatException e) {
+                    // чужой файл с похожим именем
+                }
+            }
+        }
+        return files;
+    }
+
+    private long lastGeneration() {
+        TreeMap<Long, Path> files = journalFiles();
+        return files.isEmpty() ? 0 : files.lastKey();
+    }
+
+    private void deleteJournals(long upToGeneration) throws IOException {
+        List<Path> obsolete = new ArrayList<>(journalFiles().headMap(upToGeneration, true).values());
+        for (Path journalFile : obsolete) {
+            Files.deleteIfExists(journalFile);
+        }
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return Path.of(journalPrefix + "." + journalGeneration);
+    }
+
+    private static LocalDate toDate(int year) {
+        return (year > 0 && year <= LocalDate.now().getYear()) ? LocalDate.of(year, 1, 1) : null;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        BookSnapshot.putVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[BookSnapshot.getVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
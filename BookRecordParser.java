@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+// Разбор записей вида [name = "...", author = "...", genre = "...", year = N]
+// прямо из байтового буфера, без регулярных выражений и построчного чтения.
+public class BookRecordParser {
+    private static final byte[] NAME_PREFIX = ascii("[name = \"");
+    private static final byte[] AUTHOR_DELIMITER = ascii("\", author = \"");
+    private static final byte[] GENRE_DELIMITER = ascii("\", genre = \"");
+    private static final byte[] YEAR_DELIMITER = ascii("\", year = ");
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int pos;
+    private int line;
+    private int lineStart;
+    private byte[] scratch = new byte[256];
+    private final int currentYear = LocalDate.now().getYear();
+
+    private String name;
+    private String author;
+    private String genre;
+    private int year;
+    private int recordLine;
+    private int recordStart;
+
+    public BookRecordParser(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.limit(), 1);
+    }
+
+    // разбор участка [start, end) буфера; firstLine - номер первой строки участка
+    public BookRecordParser(ByteBuffer buffer, int start, int end, int firstLine) {
+        this.buffer = buffer;
+        this.pos = start;
+        this.limit = end;
+        this.line = firstLine;
+        this.lineStart = start;
+        skipBom();
+    }
+
+    // Файл целиком в буфере в куче. Файл не отображается в память: отображение живёт,
+    // пока буфер не соберёт сборщик мусора, а в Windows отображённый файл нельзя ни заменить,
+    // ни обрезать - lib.txt, снимок и журнал после чтения как раз переписываются.
+    public static ByteBuffer readFile(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Файл слишком большой для чтения в память: " + filePath);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // читаем до конца файла
+            }
+            return buffer.flip();
+        }
+    }
+
+    // запись в том же формате, без перевода строки
+    public static void writeRecord(Writer writer, Book book) throws IOException {
+        writer.write("[name = \"");
+        writer.write(book.getName());
+        writer.write("\", author = \"");
+        writer.write(book.getAuthor());
+        writer.write("\", genre = \"");
+        writer.write(book.getGenre());
+        writer.write("\", year = ");
+        writer.write(Integer.toString(book.getDate()));
+        writer.write(']');
+    }
+
+    // Переходит к следующей записи. Пустые строки пропускаются.
+    public boolean next() {
+        while (pos < limit) {
+            skipSpaces();
+            if (pos >= limit) {
+                return false;
+            }
+            byte b = buffer.get(pos);
+            if (b == '\n' || b == '\r') {
+                skipLineBreak();
+                continue;
+            }
+
+            recordLine = line;
+            recordStart = pos;
+            expect(NAME_PREFIX);
+            name = readValue(AUTHOR_DELIMITER);
+            author = readValue(GENRE_DELIMITER);
+            genre = readValue(YEAR_DELIMITER);
+            year = readYear();
+            if (pos >= limit || buffer.get(pos) != ']') {
+                throw error("ожидалась ']'");
+            }
+            pos++;
+
+            skipSpaces();
+            if (pos < limit && buffer.get(pos) != '\n' && buffer.get(pos) != '\r') {
+                throw error("лишние символы после записи");
+            }
+            skipLineBreak();
+            return true;
+        }
+        return false;
+    }
+
+    // После ошибки разбора переходит к началу следующей строки: следующий next()
+    // продолжит со следующей записи, а ошибочная строка будет пропущена
+    public void skipLine() {
+        while (pos < limit && buffer.get(pos) != '\n' && buffer.get(pos) != '\r') {
+            pos++;
+        }
+        skipLineBreak();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getLine() {
+        return recordLine;
+    }
+
+    // смещение начала текущей записи в буфере
+    public int getRecordStart() {
+        return recordStart;
+    }
+
+    // книга из текущей записи; пустые поля заменяются значениями по умолчанию
+    public Book toBook() {
+        String bookAuthor = author.isEmpty() ? "Неизвестен" : author;
+        String bookGenre = genre.isEmpty() ? "Не указан" : genre;
+
+        LocalDate publicationDate = null;
+        if (year > 0 && year <= currentYear) {
+            publicationDate = LocalDate.of(year, 1, 1);
+        }
+
+        return new Book(name, bookAuthor, bookGenre, publicationDate);
+    }
+
+    private void expect(byte[] token) {
+        for (byte b : token) {
+            if (pos >= limit || buffer.get(pos) != b) {
+                throw error("ожидалось '" + new String(token, StandardCharsets.US_ASCII) + "'");
+            }
+            pos++;
+        }
+    }
+
+    // значение заканчивается на первой кавычке, за которой идёт нужный разделитель
+    private String readValue(byte[] delimiter) {
+        int start = pos;
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            if (b == '"' && matches(delimiter)) {
+                String value = decode(start, pos);
+                pos += delimiter.length;
+                return value;
+            }
+            pos++;
+        }
+        throw error("ожидалось '" + new String(delimiter, StandardCharsets.US_ASCII) + "'");
+    }
+
+    private int readYear() {
+        boolean negative = false;
+        if (pos < limit && buffer.get(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        int start = pos;
+        long value = 0;
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw error("слишком большой год");
+            }
+            pos++;
+        }
+        if (pos == start) {
+            throw error("ожидался год");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private boolean matches(byte[] token) {
+        if (limit - pos < token.length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (buffer.get(pos + i) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int from, int to) {
+        int length = to - from;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(from, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void skipSpaces() {
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b != ' ' && b != '\t') {
+                break;
+            }
+            pos++;
+        }
+    }
+
+    private void skipLineBreak() {
+        if (pos < limit && buffer.get(pos) == '\r') {
+            pos++;
+        }
+        if (pos < limit && buffer.get(pos) == '\n') {
+            pos++;
+        }
+        line++;
+        lineStart = pos;
+    }
+
+    private void skipBom() {
+        if (limit - pos >= 3 && buffer.get(pos) == (byte) 0xEF
+                && buffer.get(pos + 1) == (byte) 0xBB && buffer.get(pos + 2) == (byte) 0xBF) {
+            pos += 3;
+            lineStart = pos;
+        }
+    }
+
+    private ParseException error(String message) {
+        // столбец считается в символах, а не в байтах UTF-8
+        int column = 1;
+        for (int i = lineStart; i < pos && i < limit; i++) {
+            if ((buffer.get(i) & 0xC0) != 0x80) {
+                column++;
+            }
+        }
+        return new ParseException(message, line, column);
+    }
+
+    private static byte[] ascii(String token) {
+        return token.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static class ParseException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String reason;
+        private final int line;
+        private final int column;
+
+        public ParseException(String reason, int line, int column) {
+            super("строка " + line + ((column > 0) ? ", столбец " + column : "") + ": " + reason);
+            this.reason = reason;
+            this.line = line;
+            this.column = column;
+        }
+
+        // ошибка всей записи, без места в строке (например, из записи не создаётся книга)
+        public ParseException(String reason, int line) {
+            this(reason, line, 0);
+        }
+
+        // та же ошибка со сдвигом номера строки (для разбора файла по частям)
+        public ParseException shiftLines(int lines) {
+            return new ParseException(reason, line + lines, column);
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        // 0, если ошибка относится ко всей записи
+        public int getColumn() {
+            return column;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+// Двоичный снимок библиотеки.
+// Формат (версия 2):
+//   int magic, short version, long поколение журнала (с версии 2)
+//   словарь жанров и словарь авторов: varint count, далее строки
+//   varint количество книг, далее для каждой книги:
+//     varint id жанра, varint id автора, short год (-1 - неизвестен), строка название
+// Строка - varint длина в байтах + UTF-8.
+public class BookSnapshot {
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    private static final short VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static int write(String filePath, Collection<? extends Collection<Book>> booksByGenre) throws IOException {
+        return write(filePath, booksByGenre, 0);
+    }
+
+    // generation - номер последнего файла журнала, изменения из которого уже вошли в снимок
+    public static int write(String filePath, Collection<? extends Collection<Book>> booksByGenre,
+                            long generation) throws IOException {
+        HashMap<String, Integer> genreIds = new HashMap<>();
+        HashMap<String, Integer> authorIds = new HashMap<>();
+        ArrayList<String> genres = new ArrayList<>();
+        ArrayList<String> authors = new ArrayList<>();
+        int bookCount = 0;
+        for (Collection<Book> list : booksByGenre) {
+            for (Book book : list) {
+                dictionaryId(book.getGenre(), genreIds, genres);
+                dictionaryId(book.getAuthor(), authorIds, authors);
+                bookCount++;
+            }
+        }
+
+        Path target = Path.of(filePath);
+        Path temp = Path.of(filePath + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            writer.putInt(MAGIC);
+            writer.putShort(VERSION);
+            writer.putLong(generation);
+            writer.putStrings(genres);
+            writer.putStrings(authors);
+            writer.putVarInt(bookCount);
+            for (Collection<Book> list : booksByGenre) {
+                for (Book book : list) {
+                    writer.putVarInt(genreIds.get(book.getGenre()));
+                    writer.putVarInt(authorIds.get(book.getAuthor()));
+                    writer.putShort((short) book.getDate());
+                    writer.putString(book.getName());
+                }
+            }
+            writer.flush();
+            channel.force(false);
+        }
+        // снимок заменяется целиком, поэтому при сбое остаётся предыдущая версия
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return bookCount;
+    }
+
+    public static List<Book> read(String filePath) throws IOException {
+        Reader reader = new Reader(BookRecordParser.readFile(filePath));
+        try {
+            if (reader.buffer.getInt() != MAGIC) {
+                throw new IOException("Файл не является снимком библиотеки: " + filePath);
+            }
+            readGeneration(reader.buffer, filePath);
+
+            String[] genres = reader.getStrings();
+            String[] authors = reader.getStrings();
+            int bookCount = reader.getVarInt();
+            int currentYear = LocalDate.now().getYear();
+
+            ArrayList<Book> books = new ArrayList<>(bookCount);
+            for (int i = 0; i < bookCount; i++) {
+                String genre = genres[reader.getVarInt()];
+                String author = authors[reader.getVarInt()];
+                int year = reader.buffer.getShort();
+                String name = reader.getString();
+
+                LocalDate publicationDate = (year > 0 && year <= currentYear) ? LocalDate.of(year, 1, 1) : null;
+                books.add(new Book(name, author, genre, publicationDate));
+            }
+            return books;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, выход за границы словаря и т.п.
+            throw new IOException("Снимок повреждён: " + filePath, e);
+        }
+    }
+
+    public static long readGeneration(String filePath) throws IOException {
+        // нужен только заголовок: magic, версия и поколение
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + 8);
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // читаем до конца заголовка
+            }
+        }
+        buffer.flip();
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Файл не является снимком библиотеки: " + filePath);
+            }
+            return readGeneration(buffer, filePath);
+        } catch (RuntimeException e) {
+            throw new IOException("Снимок повреждён: " + filePath, e);
+        }
+    }
+
+    private static long readGeneration(ByteBuffer buffer, String filePath) throws IOException {
+        short version = buffer.getShort();
+        if (version == 1) {
+            return 0;
+        }
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия снимка: " + version);
+        }
+        return buffer.getLong();
+    }
+
+    static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return value;
+    }
+
+    private static void dictionaryId(String value, HashMap<String, Integer> ids, ArrayList<String> values) {
+        if (!ids.containsKey(value)) {
+            ids.put(value, values.size());
+            values.add(value);
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int getVarInt() {
+            return BookSnapshot.getVarInt(buffer);
+        }
+
+        String getString() {
+            int length = getVarInt();
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        String[] getStrings() {
+            String[] values = new String[getVarInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = getString();
+            }
+            return values;
+        }
+    }
+
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(2);
+            buffer.putShort(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putVarInt(int value) throws IOException {
+            ensure(5);
+            BookSnapshot.putVarInt(buffer, value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void putStrings(List<String> values) throws IOException {
+            putVarInt(values.size());
+            for (String value : values) {
+                putString(value);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
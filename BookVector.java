@@ -0,0 +1,227 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+// Неизменяемый список книг. Книги лежат кусками не длиннее MAX_CHUNK; изменение копирует
+// один кусок и массив ссылок на куски, а остальные куски новая версия делит с прежней.
+// Так правка жанра из n книг стоит O(MAX_CHUNK + n / MAX_CHUNK), а старые версии
+// остаются целыми и читаются без блокировок.
+public final class BookVector extends AbstractList<Book> implements RandomAccess {
+    private static final int MAX_CHUNK = 256;
+    public static final BookVector EMPTY = new BookVector(new Book[0][]);
+
+    private final Book[][] chunks;
+    // номер первой книги каждого куска
+    private final int[] chunkStarts;
+    private final int size;
+
+    private BookVector(Book[][] chunks) {
+        this.chunks = chunks;
+        this.chunkStarts = new int[chunks.length];
+        int start = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            chunkStarts[i] = start;
+            start += chunks[i].length;
+        }
+        this.size = start;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Book get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        int chunk = chunkOf(index);
+        return chunks[chunk][index - chunkStarts[chunk]];
+    }
+
+    @Override
+    public Iterator<Book> iterator() {
+        return new Iterator<>() {
+            private int chunk;
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunks.length;
+            }
+
+            @Override
+            public Book next() {
+                if (chunk >= chunks.length) {
+                    throw new NoSuchElementException();
+                }
+                Book book = chunks[chunk][position++];
+                if (position == chunks[chunk].length) {
+                    chunk++;
+                    position = 0;
+                }
+                return book;
+            }
+        };
+    }
+
+    // Номер книги с этим местом в порядке жанра (Book.getGenreOrder) или -(номер для вставки) - 1,
+    // как у Collections.binarySearch. Список должен быть упорядочен по этим местам, как жанры в Library.
+    public int searchOrder(long order) {
+        if (chunks.length == 0) {
+            return -1;
+        }
+        // последний кусок, который начинается не дальше order
+        int low = 0;
+        int high = chunks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks[middle][0].getGenreOrder() <= order) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        Book[] chunk = chunks[low];
+        int from = 0;
+        int to = chunk.length - 1;
+        while (from <= to) {
+            int middle = (from + to) >>> 1;
+            long current = chunk[middle].getGenreOrder();
+            if (current < order) {
+                from = middle + 1;
+            } else if (current > order) {
+                to = middle - 1;
+            } else {
+                return chunkStarts[low] + middle;
+            }
+        }
+        return -(chunkStarts[low] + from) - 1;
+    }
+
+    public BookVector appended(Book book) {
+        if (chunks.length == 0 || chunks[chunks.length - 1].length == MAX_CHUNK) {
+            Book[][] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+            newChunks[chunks.length] = new Book[] {book};
+            return new BookVector(newChunks);
+        }
+        Book[] last = chunks[chunks.length - 1];
+        Book[] newLast = Arrays.copyOf(last, last.length + 1);
+        newLast[last.length] = book;
+        return withChunk(chunks.length - 1, newLast);
+    }
+
+    public BookVector inserted(int index, Book book) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        if (index == size) {
+            return appended(book);
+        }
+        int chunkIndex = chunkOf(index);
+        Book[] chunk = chunks[chunkIndex];
+        int position = index - chunkStarts[chunkIndex];
+        Book[] grown = new Book[chunk.length + 1];
+        System.arraycopy(chunk, 0, grown, 0, position);
+        grown[position] = book;
+        System.arraycopy(chunk, position, grown, position + 1, chunk.length - position);
+        if (grown.length <= MAX_CHUNK) {
+            return withChunk(chunkIndex, grown);
+        }
+        // переполненный кусок делится пополам
+        Book[][] newChunks = new Book[chunks.length + 1][];
+        System.arraycopy(chunks, 0, newChunks, 0, chunkIndex);
+        newChunks[chunkIndex] = Arrays.copyOfRange(grown, 0, grown.length / 2);
+        newChunks[chunkIndex + 1] = Arrays.copyOfRange(grown, grown.length / 2, grown.length);
+        System.arraycopy(chunks, chunkIndex + 1, newChunks, chunkIndex + 2, chunks.length - chunkIndex - 1);
+        return new BookVector(newChunks);
+    }
+
+    public BookVector removed(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        int chunkIndex = chunkOf(index);
+        Book[] chunk = chunks[chunkIndex];
+        if (chunk.length == 1) {
+            Book[][] newChunks = new Book[chunks.length - 1][];
+            System.arraycopy(chunks, 0, newChunks, 0, chunkIndex);
+            System.arraycopy(chunks, chunkIndex + 1, newChunks, chunkIndex, chunks.length - chunkIndex - 1);
+            return new BookVector(newChunks);
+        }
+        int position = index - chunkStarts[chunkIndex];
+        Book[] shrunk = new Book[chunk.length - 1];
+        System.arraycopy(chunk, 0, shrunk, 0, position);
+        System.arraycopy(chunk, position + 1, shrunk, position, chunk.length - position - 1);
+        return withChunk(chunkIndex, shrunk);
+    }
+
+    public BookVector replaced(int index, Book book) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        int chunkIndex = chunkOf(index);
+        Book[] chunk = chunks[chunkIndex].clone();
+        chunk[index - chunkStarts[chunkIndex]] = book;
+        return withChunk(chunkIndex, chunk);
+    }
+
+    private BookVector withChunk(int chunkIndex, Book[] chunk) {
+        Book[][] newChunks = chunks.clone();
+        newChunks[chunkIndex] = chunk;
+        return new BookVector(newChunks);
+    }
+
+    private int chunkOf(int index) {
+        int low = 0;
+        int high = chunks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunkStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // Сборка списка из многих книг (загрузка, импорт): книги дописываются в изменяемый
+    // последний кусок, а готовый список получается один раз в build()
+    public static final class Builder {
+        private final ArrayList<Book[]> chunks = new ArrayList<>();
+        private Book[] tail = new Book[MAX_CHUNK];
+        private int tailSize;
+
+        public Builder(BookVector base) {
+            chunks.addAll(Arrays.asList(base.chunks));
+            // неполный последний кусок продолжается, полные делятся с base
+            if (!chunks.isEmpty() && chunks.get(chunks.size() - 1).length < MAX_CHUNK) {
+                Book[] last = chunks.remove(chunks.size() - 1);
+                System.arraycopy(last, 0, tail, 0, last.length);
+                tailSize = last.length;
+            }
+        }
+
+        public void add(Book book) {
+            if (tailSize == MAX_CHUNK) {
+                chunks.add(tail);
+                tail = new Book[MAX_CHUNK];
+                tailSize = 0;
+            }
+            tail[tailSize++] = book;
+        }
+
+        public BookVector build() {
+            ArrayList<Book[]> result = new ArrayList<>(chunks);
+            if (tailSize > 0) {
+                result.add(Arrays.copyOf(tail, tailSize));
+            }
+            return new BookVector(result.toArray(new Book[0][]));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Генератор синтетического каталога в формате lib.txt.
+// При одинаковом seed файл получается одинаковым, поэтому замеры LibraryBenchmark
+// (ориентировочные, см. там) можно сравнивать между прогонами.
+// Запуск: java CatalogGenerator <количество книг> <файл> [seed]
+public class CatalogGenerator {
+    private static final String[] WORDS = {
+            "Война", "мир", "Тихий", "Дон", "Мастер", "Маргарита", "Белая", "гвардия", "Мёртвые", "души",
+            "Отцы", "дети", "Герой", "нашего", "времени", "Горе", "от", "ума", "Собачье", "сердце",
+            "Идиот", "Бесы", "Братья", "Обломов", "Вишнёвый", "сад", "Капитанская", "дочка", "Чайка", "Ревизор"
+    };
+    private static final String[] GENRES = {
+            "Роман", "Фэнтези", "Антиутопия", "Сатира", "Поэзия", "Драма", "Детектив", "Фантастика",
+            "Повесть", "Рассказ", "Пьеса", "Мемуары", "Биография", "История", "Приключения", "Ужасы"
+    };
+    private static final String[] SURNAMES = {
+            "Толстой", "Достоевский", "Булгаков", "Чехов", "Гоголь", "Пушкин", "Лермонтов", "Тургенев",
+            "Гончаров", "Шолохов", "Набоков", "Бунин", "Куприн", "Платонов", "Пастернак", "Замятин"
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Использование: java CatalogGenerator <количество книг> <файл> [seed]");
+            return;
+        }
+        int count = Integer.parseInt(args[0]);
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 42;
+        write(args[1], count, seed);
+        System.out.println("Записано " + count + " книг в файл: " + args[1]);
+    }
+
+    // Книги с номерами [0, count). Название уникально благодаря номеру,
+    // авторов в несколько раз меньше, чем книг; у каждой десятой книги год неизвестен.
+    // Запись зависит только от номера и seed, поэтому диапазоны разных файлов
+    // с одним seed пересекаются одинаковыми книгами.
+    public static void write(String filePath, int count, long seed) throws IOException {
+        write(filePath, 0, count, seed);
+    }
+
+    public static void write(String filePath, int first, int count, long seed) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath, StandardCharsets.UTF_8))) {
+            for (int i = first; i < first + count; i++) {
+                Random random = new Random(seed * 31 + i);
+                int year = (random.nextInt(10) == 0) ? -1 : 1500 + random.nextInt(520);
+                writer.write("[name = \"");
+                writer.write(title(i, random));
+                writer.write("\", author = \"");
+                writer.write(author(random.nextInt(i / 10 + 1)));
+                writer.write("\", genre = \"");
+                writer.write(GENRES[random.nextInt(GENRES.length)]);
+                writer.write("\", year = ");
+                writer.write(Integer.toString(year));
+                writer.write(']');
+                writer.newLine();
+            }
+        }
+    }
+
+    private static String title(int index, Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + index;
+    }
+
+    private static String author(int index) {
+        return SURNAMES[index % SURNAMES.length] + " " + index;
+    }
+}
@@ -0,0 +1,212 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Потокобезопасная библиотека для нескольких потоков.
+// Все изменения идут под одной блокировкой записи: каждое из них обновляет и жанр,
+// и общие индексы по названию/автору, так что перенос книги между жанрами атомарен.
+// Поиски идут под блокировкой чтения и возвращают копии книг,
+// чтобы вызывающий код не видел книгу посреди редактирования; правка копии библиотеку не меняет.
+// Оптимистичное чтение без блокировки здесь не годится: индексы - обычные HashMap,
+// и чтение во время их перестройки может не просто вернуть старое значение, а зациклиться.
+// Полный вывод, выборки по жанрам и сохранения идут по снимку библиотеки (LibrarySnapshot)
+// вообще без блокировки: долгая печать или запись файла не задерживает изменения.
+public class ConcurrentLibrary extends Library {
+    private final StampedLock lock = new StampedLock();
+
+    @Override
+    public void addBook(Book book) {
+        underWriteLock(() -> super.addBook(book));
+    }
+
+    @Override
+    public void editBook(String name, String newName, String newAuthor, String newGenre, LocalDate newDate) {
+        underWriteLock(() -> super.editBook(name, newName, newAuthor, newGenre, newDate));
+    }
+
+    @Override
+    public void removeBookByName(String name) {
+        underWriteLock(() -> super.removeBookByName(name));
+    }
+
+    @Override
+    public int removeBooksByNameQuietly(String name) {
+        return underWriteLock(() -> super.removeBooksByNameQuietly(name));
+    }
+
+    @Override
+    public void applyBatch(BookBatch batch) {
+        underWriteLock(() -> super.applyBatch(batch));
+    }
+
+    @Override
+    public int mergeGenre(String from, String into) {
+        return underWriteLock(() -> super.mergeGenre(from, into));
+    }
+
+    @Override
+    public Book findBookByName(String name) {
+        return underReadLock(() -> copyOf(super.findBookByName(name)));
+    }
+
+    @Override
+    public List<Book> findBooksByPrefix(String prefix, int limit) {
+        return underReadLock(() -> copyOf(super.findBooksByPrefix(prefix, limit)));
+    }
+
+    @Override
+    public List<Book> findBooksBySubstring(String part, int limit) {
+        return underReadLock(() -> copyOf(super.findBooksBySubstring(part, limit)));
+    }
+
+    @Override
+    public List<Book> findBooksFuzzy(String query, int maxDistance, int limit) {
+        return underReadLock(() -> copyOf(super.findBooksFuzzy(query, maxDistance, limit)));
+    }
+
+    @Override
+    public List<String> findGenresFuzzy(String genre, int maxDistance) {
+        return underReadLock(() -> super.findGenresFuzzy(genre, maxDistance));
+    }
+
+    @Override
+    public List<Book> findBooksByYearRange(int from, int to) {
+        return underReadLock(() -> copyOf(super.findBooksByYearRange(from, to)));
+    }
+
+    @Override
+    public List<Book> findBooksWithoutYear() {
+        return underReadLock(() -> copyOf(super.findBooksWithoutYear()));
+    }
+
+    @Override
+    public void findBooksByAuthor(String author) {
+        underReadLock(() -> super.findBooksByAuthor(author));
+    }
+
+    @Override
+    public void printBooksByGenre(String genre, int offset, int limit) {
+        underReadLock(() -> super.printBooksByGenre(genre, offset, limit));
+    }
+
+    @Override
+    public void printAllBooks(SortOrder order, int offset, int limit) {
+        underReadLock(() -> super.printAllBooks(order, offset, limit));
+    }
+
+    // Поток по живым спискам нельзя отдавать наружу из-под блокировки,
+    // поэтому страница собирается сразу, а поток идёт по копиям.
+    // Выборки по снимку (queryAllBooks(offset, limit), queryBooksByGenre) не переопределяются:
+    // они идут без блокировки, а книги снимка и так только для чтения.
+    @Override
+    public Stream<Book> queryAllBooks(SortOrder order, int offset, int limit) {
+        return underReadLock(() -> copyOf(super.queryAllBooks(order, offset, limit).collect(Collectors.toList())).stream());
+    }
+
+    @Override
+    public Stream<Book> queryBooksByAuthor(String author, int offset, int limit) {
+        return underReadLock(() -> copyOf(super.queryBooksByAuthor(author, offset, limit).collect(Collectors.toList())).stream());
+    }
+
+    @Override
+    public Stream<Book> queryBooksByYearRange(int from, int to, int offset, int limit) {
+        return underReadLock(() -> copyOf(super.queryBooksByYearRange(from, to, offset, limit).collect(Collectors.toList())).stream());
+    }
+
+    @Override
+    public int countBooks() {
+        return underReadLock(() -> super.countBooks());
+    }
+
+    @Override
+    public void loadBooksFromFile(String filePath, boolean parallel) {
+        underWriteLock(() -> super.loadBooksFromFile(filePath, parallel));
+    }
+
+    @Override
+    public void importBooksFromFile(String filePath) {
+        underWriteLock(() -> super.importBooksFromFile(filePath));
+    }
+
+    @Override
+    public void importBooksFromFiles(String source) {
+        underWriteLock(() -> super.importBooksFromFiles(source));
+    }
+
+    @Override
+    public int importBooksQuietly(String source) {
+        return underWriteLock(() -> super.importBooksQuietly(source));
+    }
+
+    @Override
+    public void loadSnapshot(String filePath) {
+        underWriteLock(() -> super.loadSnapshot(filePath));
+    }
+
+    @Override
+    public void loadSegments(String directory, Collection<String> genres) {
+        underWriteLock(() -> super.loadSegments(directory, genres));
+    }
+
+    // сохранение сбрасывает отметки изменённых жанров, поэтому идёт под блокировкой записи
+    @Override
+    public void saveSegments(String directory) {
+        underWriteLock(() -> super.saveSegments(directory));
+    }
+
+    private void underWriteLock(Runnable operation) {
+        long stamp = lock.writeLock();
+        try {
+            operation.run();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private <T> T underWriteLock(Supplier<T> operation) {
+        long stamp = lock.writeLock();
+        try {
+            return operation.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void underReadLock(Runnable operation) {
+        long stamp = lock.readLock();
+        try {
+            operation.run();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T underReadLock(Supplier<T> operation) {
+        long stamp = lock.readLock();
+        try {
+            return operation.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static List<Book> copyOf(List<Book> books) {
+        List<Book> copies = new ArrayList<>(books.size());
+        for (Book book : books) {
+            copies.add(copyOf(book));
+        }
+        return copies;
+    }
+
+    private static Book copyOf(Book book) {
+        if (book == null) {
+            return null;
+        }
+        return new Book(book.getName(), book.getAuthor(), book.getGenre(), book.getPublicationDate());
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Проверка ConcurrentLibrary под одновременными изменениями и чтениями.
+// Каждый пишущий поток добавляет свои книги, переносит их в другой жанр с новым годом
+// и удаляет каждую третью. Читающие потоки в это время ищут книги по названию и берут снимки.
+// В конце сверяется, что ни одно изменение не потерялось, а читатели не видели книгу
+// посреди правки или снимок, в котором число книг не сходится с жанрами.
+// Запуск: java ConcurrentLibraryStressTest [пишущих потоков] [книг на поток] [читающих потоков]
+// Код завершения 1, если найдены расхождения.
+public class ConcurrentLibraryStressTest {
+    private static final int[] YEARS = {1900, 1950, 2000};
+
+    public static void main(String[] args) throws Exception {
+        int writerCount = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+        int booksPerWriter = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int readerCount = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+
+        PrintStream out = System.out;
+        // удаление печатает сообщения о каждой книге
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        ConcurrentLibrary library = new ConcurrentLibrary();
+        ExecutorService executor = Executors.newFixedThreadPool(writerCount + readerCount);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger readCount = new AtomicInteger();
+        AtomicInteger tornReads = new AtomicInteger();
+        AtomicInteger badSnapshots = new AtomicInteger();
+
+        long startTime = System.nanoTime();
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < writerCount; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < booksPerWriter; i++) {
+                    library.addBook(new Book(name(writer, i), author(writer, i), "Жанр " + (i % 3)));
+                }
+                for (int i = 0; i < booksPerWriter; i++) {
+                    library.editBook(name(writer, i), null, null, "Правка " + (i % 4), YEARS[i % YEARS.length]);
+                }
+                for (int i = 0; i < booksPerWriter; i += 3) {
+                    library.removeBookByName(name(writer, i));
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < readerCount; r++) {
+            readers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (writing.get()) {
+                    int writer = random.nextInt(writerCount);
+                    int i = random.nextInt(booksPerWriter);
+                    Book book = library.findBookByName(name(writer, i));
+                    readCount.incrementAndGet();
+                    if (book != null && !isConsistent(book, writer, i)) {
+                        tornReads.incrementAndGet();
+                    }
+                    if (readCount.get() % 100 == 0 && !isConsistent(library.snapshot())) {
+                        badSnapshots.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        System.setOut(out);
+
+        int expectedCount = writerCount * (booksPerWriter - (booksPerWriter + 2) / 3);
+        int lostUpdates = 0;
+        for (int w = 0; w < writerCount; w++) {
+            for (int i = 0; i < booksPerWriter; i++) {
+                Book book = library.findBookByName(name(w, i));
+                boolean removed = i % 3 == 0;
+                if (removed ? book != null : book == null || !isFinal(book, i)) {
+                    lostUpdates++;
+                }
+            }
+        }
+        int count = library.countBooks();
+        LibrarySnapshot snapshot = library.snapshot();
+
+        out.println("Пишущих потоков: " + writerCount + ", книг на поток: " + booksPerWriter +
+                ", читающих потоков: " + readerCount + " (за " + elapsedMillis + " мс)");
+        out.println("Чтений: " + readCount.get() + ", книг посреди правки: " + tornReads.get() +
+                ", несогласованных снимков: " + badSnapshots.get());
+        out.println("Книг: " + count + " из " + expectedCount + ", в снимке: " + snapshot.getBookCount() +
+                ", потерянных изменений: " + lostUpdates);
+
+        boolean failed = tornReads.get() > 0 || badSnapshots.get() > 0 || lostUpdates > 0
+                || count != expectedCount || snapshot.getBookCount() != expectedCount || !isConsistent(snapshot);
+        out.println(failed ? "ОШИБКА" : "OK");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static String name(int writer, int i) {
+        return "Книга " + writer + "-" + i;
+    }
+
+    private static String author(int writer, int i) {
+        return "Автор " + writer + "-" + i;
+    }
+
+    // книга либо ещё не правилась, либо уже исправлена целиком
+    private static boolean isConsistent(Book book, int writer, int i) {
+        if (!book.getAuthor().equals(author(writer, i))) {
+            return false;
+        }
+        if (book.getGenre().equals("Жанр " + (i % 3))) {
+            return book.getPublicationDate() == null;
+        }
+        return isFinal(book, i);
+    }
+
+    private static boolean isFinal(Book book, int i) {
+        LocalDate date = book.getPublicationDate();
+        return book.getGenre().equals("Правка " + (i % 4))
+                && date != null && date.getYear() == YEARS[i % YEARS.length];
+    }
+
+    private static boolean isConsistent(LibrarySnapshot snapshot) {
+        int count = 0;
+        for (BookVector books : snapshot.getBooksByGenre()) {
+            if (books.isEmpty()) {
+                return false;
+            }
+            count += books.size();
+        }
+        return count == snapshot.getBookCount();
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Библиотека на диске по жанрам: папка с файлом сегмента на каждый жанр
+// (записи в формате lib.txt) и манифестом manifest.txt:
+//   next <номер следующего файла>
+//   <файл сегмента><TAB><число книг><TAB><жанр>
+// Изменённый жанр каждый раз пишется в новый файл seg-<номер>.txt, затем манифест
+// заменяется через временный файл и переименование, и только после этого удаляются
+// старые файлы. При сбое манифест указывает либо на все старые сегменты, либо на все новые.
+public class GenreSegmentStore {
+    private static final String MANIFEST = "manifest.txt";
+    private static final String SEGMENT_PREFIX = "seg-";
+
+    private final Path directory;
+    private final LinkedHashMap<String, Segment> segments = new LinkedHashMap<>();
+    private long nextFileNumber = 1;
+
+    private GenreSegmentStore(Path directory) {
+        this.directory = directory;
+    }
+
+    // открывает папку сегментов; если манифеста ещё нет, хранилище пустое
+    public static GenreSegmentStore open(String directory) throws IOException {
+        GenreSegmentStore store = new GenreSegmentStore(Path.of(directory).toAbsolutePath().normalize());
+        Path manifest = store.directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            store.readManifest(manifest);
+            store.removeUnreferencedFiles();
+        }
+        return store;
+    }
+
+    public boolean isAt(String directory) {
+        return this.directory.equals(Path.of(directory).toAbsolutePath().normalize());
+    }
+
+    public boolean exists() {
+        return Files.exists(directory.resolve(MANIFEST));
+    }
+
+    // время последней записи манифеста, то есть последнего сохранения; 0, если манифеста нет
+    public long lastModified() {
+        return directory.resolve(MANIFEST).toFile().lastModified();
+    }
+
+    public Set<String> getGenres() {
+        return segments.keySet();
+    }
+
+    public boolean contains(String genre) {
+        return segments.containsKey(genre);
+    }
+
+    public int getBookCount(String genre) {
+        Segment segment = segments.get(genre);
+        return (segment == null) ? 0 : segment.bookCount;
+    }
+
+    public long getFileSize(String genre) {
+        Segment segment = segments.get(genre);
+        return (segment == null) ? 0 : directory.resolve(segment.file).toFile().length();
+    }
+
+    public List<Book> read(String genre) throws IOException {
+        Segment segment = segments.get(genre);
+        if (segment == null) {
+            return new ArrayList<>();
+        }
+        ArrayList<Book> books = new ArrayList<>(segment.bookCount);
+        BookRecordParser parser = new BookRecordParser(
+                BookRecordParser.readFile(directory.resolve(segment.file).toString()));
+        while (parser.next()) {
+            books.add(parser.toBook());
+        }
+        return books;
+    }
+
+    // Перезаписывает сегменты перечисленных жанров; пустой список книг удаляет жанр.
+    // Возвращает число записанных книг.
+    public int write(Map<String, ? extends Collection<Book>> changedGenres) throws IOException {
+        Files.createDirectories(directory);
+        LinkedHashMap<String, Segment> updated = new LinkedHashMap<>(segments);
+        long fileNumber = nextFileNumber;
+        List<Path> obsolete = new ArrayList<>();
+        int writtenCount = 0;
+
+        for (Map.Entry<String, ? extends Collection<Book>> entry : changedGenres.entrySet()) {
+            Segment old = updated.remove(entry.getKey());
+            if (old != null) {
+                obsolete.add(directory.resolve(old.file));
+            }
+            if (!entry.getValue().isEmpty()) {
+                String file = SEGMENT_PREFIX + fileNumber++ + ".txt";
+                writeSegment(directory.resolve(file), entry.getValue());
+                updated.put(entry.getKey(), new Segment(file, entry.getValue().size()));
+                writtenCount += entry.getValue().size();
+            }
+        }
+
+        writeManifest(updated, fileNumber);
+        segments.clear();
+        segments.putAll(updated);
+        nextFileNumber = fileNumber;
+        for (Path file : obsolete) {
+            Files.deleteIfExists(file);
+        }
+        return writtenCount;
+    }
+
+    private void writeSegment(Path file, Collection<Book> books) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file.toFile());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            for (Book book : books) {
+                BookRecordParser.writeRecord(writer, book);
+                writer.newLine();
+            }
+            writer.flush();
+            // сегмент должен быть на диске раньше манифеста, который на него ссылается
+            stream.getFD().sync();
+        }
+    }
+
+    private void writeManifest(Map<String, Segment> entries, long fileNumber) throws IOException {
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            writer.write("next " + fileNumber);
+            writer.newLine();
+            for (Map.Entry<String, Segment> entry : entries.entrySet()) {
+                writer.write(entry.getValue().file + "\t" + entry.getValue().bookCount + "\t" + entry.getKey());
+                writer.newLine();
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readManifest(Path manifest) throws IOException {
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            if (line.startsWith("next ")) {
+                nextFileNumber = Long.parseLong(line.substring("next ".length()).trim());
+                continue;
+            }
+            String[] fields = line.split("\t", 3);
+            if (fields.length != 3) {
+                throw new IOException("Ошибка в манифесте сегментов, строка " + (i + 1) + ": " + line);
+            }
+            try {
+                segments.put(fields[2], new Segment(fields[0], Integer.parseInt(fields[1])));
+            } catch (NumberFormatException e) {
+                throw new IOException("Ошибка в манифесте сегментов, строка " + (i + 1) + ": " + line);
+            }
+        }
+    }
+
+    // сегменты, записанные прерванным сохранением, в манифест не попали и не нужны
+    private void removeUnreferencedFiles() throws IOException {
+        HashSet<String> referenced = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            referenced.add(segment.file);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*.txt")) {
+            for (Path file : files) {
+                if (!referenced.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Files.deleteIfExists(directory.resolve(MANIFEST + ".tmp"));
+    }
+
+    private static final class Segment {
+        private final String file;
+        private final int bookCount;
+
+        Segment(String file, int bookCount) {
+            this.file = file;
+            this.bookCount = bookCount;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Проверка импорта из папки и по шаблону имени файла (Library.importBooksQuietly).
+// В папке лежат a.txt, b.txt и c.dat по одной книге: шаблон *.txt должен взять две из них,
+// b*.txt - одну, папка целиком - все три.
+// Запуск: java ImportFilesTest
+// Код завершения 1, если число импортированных книг не совпало.
+public class ImportFilesTest {
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("import-files");
+        boolean failed = false;
+        try {
+            writeBook(directory.resolve("a.txt"), "Первая");
+            writeBook(directory.resolve("b.txt"), "Вторая");
+            writeBook(directory.resolve("c.dat"), "Третья");
+
+            String prefix = directory.toString() + File.separator;
+            failed |= !check(prefix + "*.txt", 2);
+            failed |= !check(prefix + "b*.txt", 1);
+            failed |= !check(directory.toString(), 3);
+            // разделитель '/' допустим в шаблоне и там, где папки разделяет '\'
+            failed |= !check(directory + "/*.dat", 1);
+        } finally {
+            File[] files = directory.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.toFile().delete();
+        }
+        System.out.println(failed ? "ОШИБКА" : "OK");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(String source, int expected) {
+        int imported = new Library().importBooksQuietly(source);
+        System.out.println(source + ": импортировано " + imported + " из " + expected);
+        return imported == expected;
+    }
+
+    private static void writeBook(Path file, String name) throws IOException {
+        Files.writeString(file, "[name = \"" + name + "\", author = \"Автор\", genre = \"Жанр\", year = 1900]\n",
+                StandardCharsets.UTF_8);
+    }
+}
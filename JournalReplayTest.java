@@ -0,0 +1,141 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Проверка, что библиотека после перезапуска из снимка и журнала (BookJournal) та же, что до него.
+// Над библиотекой выполняются случайные добавления, правки, удаления и смены года,
+// в том числе сброс года (setDate(0), setDate(-1)), и пакеты изменений (BookBatch), которые
+// откатываются после правки года. Затем журнал закрывается и открывается в новой библиотеке.
+// Прогон идёт без сжатия журнала и со сжатием после каждых нескольких КБ.
+// Запуск: java JournalReplayTest [операций] [seed]
+// Код завершения 1, если библиотеки различаются.
+public class JournalReplayTest {
+    private static final int BOOK_NAMES = 300;
+    private static final long[] COMPACTION_THRESHOLDS = {Long.MAX_VALUE, 4 * 1024};
+
+    public static void main(String[] args) throws IOException {
+        int operationCount = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 42;
+
+        PrintStream out = System.out;
+        boolean failed = false;
+        for (long threshold : COMPACTION_THRESHOLDS) {
+            Path directory = Files.createTempDirectory("journal-replay");
+            String snapshotPath = directory.resolve("lib.bin").toString();
+            String journalPrefix = directory.resolve("lib.journal").toString();
+            try {
+                // удаления и загрузка печатают сообщения о каждой книге
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                Library library = new Library();
+                BookJournal journal = new BookJournal(snapshotPath, journalPrefix, threshold);
+                journal.open(library);
+                int[] counts = runOperations(library, operationCount, new Random(seed));
+                List<String> expected = describe(library);
+                journal.close();
+
+                Library replayed = new Library();
+                BookJournal reopened = new BookJournal(snapshotPath, journalPrefix, threshold);
+                reopened.open(replayed);
+                List<String> actual = describe(replayed);
+                reopened.close();
+                System.setOut(out);
+
+                String mode = (threshold == Long.MAX_VALUE) ? "без сжатия" : "сжатие после " + threshold + " байт";
+                out.println(mode + ": операций " + operationCount + ", из них сбросов года " + counts[0] +
+                        ", откатов пакетов " + counts[1] + ", книг " + expected.size());
+                if (!expected.equals(actual)) {
+                    failed = true;
+                    reportDifference(out, expected, actual);
+                }
+            } finally {
+                System.setOut(out);
+                deleteDirectory(directory.toFile());
+            }
+        }
+        out.println(failed ? "ОШИБКА" : "OK");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    // возвращает {число сбросов года, число откатов пакетов}
+    private static int[] runOperations(Library library, int operationCount, Random random) {
+        int[] counts = new int[2];
+        for (int i = 0; i < operationCount; i++) {
+            String name = "Книга " + random.nextInt(BOOK_NAMES);
+            Book book = library.findBookByName(name);
+            int choice = random.nextInt(11);
+            if (book == null) {
+                library.addBook(new Book(name, "Автор " + random.nextInt(20), "Жанр " + random.nextInt(5),
+                        random.nextBoolean() ? null : LocalDate.of(1800 + random.nextInt(200), 1, 1)));
+            } else if (choice < 3) {
+                library.editBook(name, null, null, random.nextBoolean() ? "Жанр " + random.nextInt(5) : null,
+                        random.nextBoolean() ? 1800 + random.nextInt(200) : null);
+            } else if (choice < 5) {
+                book.setDate(1800 + random.nextInt(200));
+            } else if (choice < 8) {
+                book.setDate(random.nextBoolean() ? 0 : -1);
+                counts[0]++;
+            } else if (choice < 9) {
+                try {
+                    library.editBook(name, null, "Автор " + random.nextInt(20), null, (Integer) null);
+                } catch (IllegalArgumentException e) {
+                    // книга с таким названием и автором уже есть
+                }
+            } else if (choice < 10) {
+                library.removeBookByName(name);
+            } else {
+                // правка года и жанра откатывается: вторая операция ссылается на несуществующую книгу
+                BookBatch batch = new BookBatch()
+                        .edit(name, null, null, "Жанр " + random.nextInt(5), 1800 + random.nextInt(200))
+                        .edit("Нет такой книги", null, null, null, 1900);
+                try {
+                    library.applyBatch(batch);
+                } catch (IllegalArgumentException e) {
+                    counts[1]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static List<String> describe(Library library) {
+        List<String> books = new ArrayList<>();
+        for (BookVector genre : library.snapshot().getBooksByGenre()) {
+            for (Book book : genre) {
+                books.add(book.getName() + " / " + book.getAuthor() + " / " + book.getGenre() + " / " + book.getDate());
+            }
+        }
+        books.sort(null);
+        return books;
+    }
+
+    private static void reportDifference(PrintStream out, List<String> expected, List<String> actual) {
+        out.println("  до перезапуска книг " + expected.size() + ", после " + actual.size());
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            String before = (i < expected.size()) ? expected.get(i) : "-";
+            String after = (i < actual.size()) ? actual.get(i) : "-";
+            if (!before.equals(after)) {
+                out.println("  первое расхождение: " + before + " | " + after);
+                return;
+            }
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+// Каталог lib.txt без разбора в объекты Book.
+// Индекс строится в фоновом потоке, который читает файл блоками: для каждой записи хранятся
+// только смещение начала и хеш названия (8 байт на книгу плюс таблица), поэтому открытие каталога
+// не зависит от его размера. Книга читается из файла и собирается при обращении,
+// недавно собранные книги держатся в небольшом LRU-кэше.
+// Файл не отображается в память и не держится в ней целиком: после загрузки каталога
+// (см. LazyLibrary) lib.txt перезаписывается, а в Windows отображённый файл заменить нельзя.
+public class LazyCatalog implements Closeable {
+    private static final int HOT_BOOKS = 4096;
+    private static final int READ_BLOCK_SIZE = 1 << 20;
+
+    private final String filePath;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final CountDownLatch indexed = new CountDownLatch(1);
+    private final LinkedHashMap<Integer, Book> hotBooks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Book> eldest) {
+            return size() > HOT_BOOKS;
+        }
+    };
+
+    // заполняются фоновым потоком до indexed.countDown()
+    private int[] recordStarts = new int[1024];
+    private int[] nameHashes = new int[1024];
+    private int recordCount;
+    // открытая адресация: номер записи + 1, 0 - пустая ячейка
+    private int[] table;
+    private RuntimeException indexError;
+
+    public LazyCatalog(String filePath) throws IOException {
+        this.filePath = filePath;
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Файл слишком большой для каталога: " + filePath);
+        }
+        Thread indexer = new Thread(this::buildIndex, "lazy-catalog-index");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public int size() {
+        awaitIndex();
+        return recordCount;
+    }
+
+    // первая по порядку файла книга с таким названием (без учёта регистра) или null
+    public Book findByName(String name) {
+        awaitIndex();
+        String key = Book.normalize(name);
+        int hash = key.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int record = table[slot] - 1;
+            if (nameHashes[record] == hash) {
+                Book book = bookAt(record);
+                if (book.getKey().getName().equals(key)) {
+                    return book;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Каталог больше не нужен (библиотека загружена целиком): файл закрывается.
+    // Индекс читает тот же файл, поэтому сначала дожидаемся его.
+    @Override
+    public void close() throws IOException {
+        try {
+            indexed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        hotBooks.clear();
+        channel.close();
+    }
+
+    private Book bookAt(int record) {
+        Book book = hotBooks.get(record);
+        if (book == null) {
+            // запись кончается не дальше начала следующей (между ними могут быть пропущенные строки)
+            long end = (record + 1 < recordCount) ? recordStarts[record + 1] : fileSize;
+            ByteBuffer bytes = ByteBuffer.allocate((int) (end - recordStarts[record]));
+            try {
+                readFully(bytes, recordStarts[record]);
+            } catch (IOException e) {
+                throw new RuntimeException("Ошибка при чтении каталога: " + e.getMessage(), e);
+            }
+            BookRecordParser parser = new BookRecordParser(bytes.flip());
+            parser.next();
+            book = parser.toBook();
+            hotBooks.put(record, book);
+        }
+        return book;
+    }
+
+    // true, если блок дочитан до конца файла
+    private boolean readFully(ByteBuffer block, long position) throws IOException {
+        while (block.hasRemaining()) {
+            if (channel.read(block, position + block.position()) < 0) {
+                return true;
+            }
+        }
+        return position + block.position() >= fileSize;
+    }
+
+    private void awaitIndex() {
+        try {
+            indexed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ожидание индекса каталога прервано", e);
+        }
+        if (indexError != null) {
+            throw indexError;
+        }
+    }
+
+    private void buildIndex() {
+        try {
+            // блок разбирается до последнего перевода строки, недочитанная строка переносится в следующий
+            ByteBuffer block = ByteBuffer.allocate(READ_BLOCK_SIZE);
+            long blockStart = 0;
+            while (true) {
+                boolean lastBlock = readFully(block, blockStart);
+                int end = lastBlock ? block.position() : lastLineBreak(block) + 1;
+                if (end == 0 && !lastBlock) {
+                    // строка длиннее блока
+                    block = ByteBuffer.allocate(block.capacity() * 2).put(block.flip());
+                    continue;
+                }
+                indexRecords(block, blockStart, end);
+                if (lastBlock) {
+                    break;
+                }
+                block.flip().position(end);
+                block.compact();
+                blockStart += end;
+            }
+
+            // таблица заполнена не больше чем наполовину; записи вставляются по порядку файла,
+            // поэтому среди одноимённых первой при поиске встречается первая в файле
+            table = new int[Integer.highestOneBit(Math.max(recordCount, 1) * 2 + 1) * 2];
+            int mask = table.length - 1;
+            for (int record = 0; record < recordCount; record++) {
+                int slot = mix(nameHashes[record]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = record + 1;
+            }
+        } catch (IOException e) {
+            indexError = new RuntimeException("Ошибка при чтении каталога: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            indexError = e;
+        } finally {
+            indexed.countDown();
+        }
+    }
+
+    private void indexRecords(ByteBuffer block, long blockStart, int end) {
+        BookRecordParser parser = new BookRecordParser(block, 0, end, 1);
+        while (true) {
+            // строки с ошибками пропускаются, как и при загрузке (Library.loadBooksFromFile)
+            try {
+                if (!parser.next()) {
+                    return;
+                }
+            } catch (BookRecordParser.ParseException e) {
+                parser.skipLine();
+                continue;
+            }
+            if (parser.getName().trim().isEmpty()) {
+                continue;
+            }
+            if (recordCount == recordStarts.length) {
+                recordStarts = Arrays.copyOf(recordStarts, recordCount * 2);
+                nameHashes = Arrays.copyOf(nameHashes, recordCount * 2);
+            }
+            recordStarts[recordCount] = (int) (blockStart + parser.getRecordStart());
+            nameHashes[recordCount] = Book.normalize(parser.getName()).hashCode();
+            recordCount++;
+        }
+    }
+
+    private static int lastLineBreak(ByteBuffer block) {
+        for (int i = block.position() - 1; i >= 0; i--) {
+            if (block.get(i) == '\n' || block.get(i) == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
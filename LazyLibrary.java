@@ -0,0 +1,66 @@
+import java.io.IOException;
+
+// Библиотека поверх LazyCatalog: пока нужен только поиск по названию и число книг,
+// книги не загружаются, а читаются из файла по запросу.
+// Любая другая операция один раз загружает весь каталог и дальше работает
+// как обычная Library.
+public class LazyLibrary extends Library {
+    private final LazyCatalog catalog;
+    private boolean materialized;
+    // версия библиотеки сразу после загрузки каталога; другая версия - были изменения
+    private LibrarySnapshot loaded;
+
+    public LazyLibrary(String filePath) throws IOException {
+        this.catalog = new LazyCatalog(filePath);
+    }
+
+    // true, если каталог уже загружен целиком (и, значит, мог измениться)
+    public boolean isMaterialized() {
+        return materialized;
+    }
+
+    // true, если после загрузки каталога библиотеку меняли
+    public boolean isChanged() {
+        return materialized && snapshot() != loaded;
+    }
+
+    @Override
+    public Book findBookByName(String name) {
+        if (materialized) {
+            return super.findBookByName(name);
+        }
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        long start = getStats().start();
+        try {
+            return catalog.findByName(name);
+        } finally {
+            getStats().record(LibraryStats.Operation.FIND_BY_NAME, start);
+        }
+    }
+
+    @Override
+    public int countBooks() {
+        return materialized ? super.countBooks() : catalog.size();
+    }
+
+    // остальные операции загружают каталог целиком
+    @Override
+    protected void beforeAccess() {
+        materialize();
+    }
+
+    private void materialize() {
+        if (!materialized) {
+            readBooksFromFile(catalog.getFilePath(), false);
+            materialized = true;
+            loaded = snapshot();
+            try {
+                catalog.close();
+            } catch (IOException e) {
+                // файл только читался
+            }
+        }
+    }
+}
@@ -1,223 +1,896 @@
 import java.util.*;
 import java.io.*;
-import java.util.regex.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Library {
-    private HashMap<String, ArrayList<Book>> booksByGenre = new HashMap<>();
+    // порядок сквозного списка всех книг
+    public enum SortOrder { TITLE, AUTHOR, YEAR }
+
+    private static final long QUERY_CACHE_CAPACITY = 4L * 1024 * 1024;
+    // сколько пропущенных при загрузке строк перечислять поимённо
+    private static final int REPORTED_SKIPPED_LINES = 10;
+    // нечёткий поиск по длинному запросу дорог (строка расстояний на каждый символ), а названий
+    // такой длины не бывает
+    public static final int MAX_FUZZY_QUERY_LENGTH = 256;
+
+    // Книги по жанрам - неизменяемая версия из копий книг (см. LibrarySnapshot). Каждое изменение
+    // собирает новую версию, а вывод, сохранение и снимки читают опубликованную в published:
+    // им не нужна блокировка, и пишущие не ждут, пока они дочитают.
+    private LibrarySnapshot booksByGenre = LibrarySnapshot.EMPTY;
+    private final AtomicReference<LibrarySnapshot> published = new AtomicReference<>(LibrarySnapshot.EMPTY);
+    // >0: идёт правка или пакет изменений, и промежуточные версии не публикуются
+    private int publishHold;
+    // изменения книг с последней публикации; о них узнаёт автосохранение
+    private int unpublishedChanges;
+    // вторичные индексы по названию и автору, ключ в нижнем регистре
+    private HashMap<String, ArrayList<Book>> booksByName = new HashMap<>();
+    private HashMap<String, ArrayList<Book>> booksByAuthor = new HashMap<>();
+    // ключи всех книг библиотеки для проверки дубликатов
+    private HashSet<Book.Key> bookKeys = new HashSet<>();
+    // поиск по началу и по части названия/автора
+    private TextSearchIndex titleSearch = new TextSearchIndex();
+    private TextSearchIndex authorSearch = new TextSearchIndex();
+    // все книги по названию, по автору и по году; ключ книги делает порядок полным.
+    // Выборки по годам - отрезки порядка по году
+    private final SortedBookIndex byTitle = new SortedBookIndex(
+            Comparator.comparing((Book book) -> book.getKey().getName())
+                    .thenComparing(book -> book.getKey().getAuthor()));
+    private final SortedBookIndex byAuthor = new SortedBookIndex(
+            Comparator.comparing((Book book) -> book.getKey().getAuthor())
+                    .thenComparing(book -> book.getKey().getName()));
+    // книги с неизвестным годом идут в конце
+    private final SortedBookIndex byYear = new SortedBookIndex(
+            Comparator.comparingInt((Book book) -> (book.getDate() > 0) ? book.getDate() : Integer.MAX_VALUE)
+                    .thenComparing(book -> book.getKey().getName())
+                    .thenComparing(book -> book.getKey().getAuthor()));
+    // книги, добавленные при загрузке или импорте: в упорядоченные списки они попадают
+    // одним слиянием в конце, а не вставкой по одной; null вне массовой загрузки
+    private ArrayList<Book> pendingSorted;
+    // жанры, в которые массовая загрузка дописывает книги без сборки версии на каждую
+    private HashMap<String, BookVector.Builder> pendingGenres;
+    // следующее место в порядке жанров (см. addToGenre)
+    private long nextGenreOrder;
+    // книга, которую сейчас меняет editBook: смену её года журналирует сам editBook
+    private Book bookBeingEdited;
+    // жанры, изменённые после последнего сохранения в сегменты или загрузки из них
+    private final HashSet<String> dirtyGenres = new HashSet<>();
+    // папка сегментов, с которой библиотека сейчас связана; null - сегменты не использовались
+    private GenreSegmentStore segments;
+    // журнал изменений; null, если изменения не журналируются
+    private BookJournal journal;
+    // фоновое сохранение; null, если не включено
+    private LibraryAutosave autosave;
+    // задержки операций; по умолчанию выключены и почти ничего не стоят
+    private LibraryStats stats = LibraryStats.DISABLED;
+    // готовый текст частых запросов (книги автора, страницы жанра)
+    private final QueryCache queryCache = new QueryCache(QUERY_CACHE_CAPACITY);
+
+    public void setJournal(BookJournal journal) {
+        this.journal = journal;
+    }
+
+    // с этого момента каждая опубликованная версия библиотеки передаётся autosave
+    public void setAutosave(LibraryAutosave autosave) {
+        this.autosave = autosave;
+    }
+
+    public void setStats(LibraryStats stats) {
+        this.stats = (stats == null) ? LibraryStats.DISABLED : stats;
+    }
+
+    public LibraryStats getStats() {
+        return stats;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    // Вызывается первым делом в каждой публичной операции над книгами (и в findBook, currentSnapshot,
+    // addAll, через которые работают журнал и пакеты). Наследники, у которых книги ещё не в памяти
+    // (LazyLibrary, SegmentedLibrary), догружают их здесь, а не в переопределении каждой операции.
+    protected void beforeAccess() {
+    }
+
+    // то же для операций над одним жанром; по умолчанию нужна вся библиотека
+    protected void beforeGenreAccess(String genre) {
+        beforeAccess();
+    }
 
     public void addBook(Book book) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            storeBook(book);
+        } finally {
+            stats.record(LibraryStats.Operation.ADD_BOOK, start);
+        }
+    }
+
+    // внутренние вызовы идут в обход публичных методов: ConcurrentLibrary
+    // переопределяет их с блокировкой, а StampedLock не реентерабелен
+    private void storeBook(Book book) {
         if (book == null) {
             throw new IllegalArgumentException("Книга не может быть null");
         }
 
-        String genre = book.getGenre();
-        booksByGenre.putIfAbsent(genre, new ArrayList<>());
-
         // чек дубликаты
-        for (Book existingBook : booksByGenre.get(genre)) {
-            if (existingBook.equals(book)) {
-                throw new IllegalArgumentException("Книга с таким названием и автором уже существует");
-            }
+        if (bookKeys.contains(book.getKey())) {
+            throw new IllegalArgumentException("Книга с таким названием и автором уже существует");
         }
 
-        booksByGenre.get(genre).add(book);
+        unpublishedChanges++;
+        addToGenre(book);
+        book.setLibrary(this);
+        indexBook(book);
+        invalidateQueries(book);
+        dirtyGenres.add(book.getGenre());
+
+        if (journal != null) {
+            journal.logAdd(book);
+        }
     }
 
     public void editBook(String name, String newName, String newAuthor, String newGenre, LocalDate newDate) {
+        beforeAccess();
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Название книги для редактирования не может быть пустым");
         }
 
-        Book bookToEdit = findBookByName(name);
-        if (bookToEdit == null) {
-            throw new IllegalArgumentException("Книга \"" + name + "\" не найдена.");
+        long start = stats.start();
+        try {
+            Book bookToEdit = firstBookByName(name);
+            if (bookToEdit == null) {
+                throw new IllegalArgumentException("Книга \"" + name + "\" не найдена.");
+            }
+
+            editBook(bookToEdit, newName, newAuthor, newGenre, newDate);
+        } finally {
+            stats.record(LibraryStats.Operation.EDIT_BOOK, start);
         }
+    }
+
+    void editBook(Book bookToEdit, String newName, String newAuthor, String newGenre, LocalDate newDate) {
+        changeBook(bookToEdit, newName, newAuthor, newGenre, newDate, false);
+    }
 
+    // Как editBook, но год ставится как есть: null сбрасывает его, а не оставляет прежним.
+    // Так применяются записи журнала (в них полное состояние книги) и откат правки.
+    void restoreBook(Book book, String name, String author, String genre, LocalDate date) {
+        changeBook(book, name, author, genre, date, true);
+    }
 
+    private void changeBook(Book bookToEdit, String newName, String newAuthor, String newGenre, LocalDate newDate,
+                            boolean exactDate) {
+        String oldName = bookToEdit.getName();
+        String oldAuthor = bookToEdit.getAuthor();
         String oldGenre = bookToEdit.getGenre();
+        LocalDate oldDate = bookToEdit.getPublicationDate();
+
+        String targetName = (newName != null && !newName.trim().isEmpty()) ? newName.trim() : oldName;
+        String targetAuthor = (newAuthor != null && !newAuthor.trim().isEmpty()) ? newAuthor.trim() : oldAuthor;
+        String targetGenre = (newGenre != null && !newGenre.trim().isEmpty()) ? newGenre.trim() : oldGenre;
+        boolean genreChanged = !targetGenre.equalsIgnoreCase(oldGenre);
+        if (!genreChanged) {
+            targetGenre = oldGenre;
+        }
 
-        try {
+        Book.Key targetKey = new Book.Key(targetName, targetAuthor);
+        boolean keyChanged = !targetKey.equals(bookToEdit.getKey());
+        if (keyChanged && bookKeys.contains(targetKey)) {
+            throw new IllegalArgumentException("Книга с таким названием и автором уже существует");
+        }
 
-            if (newGenre != null && !newGenre.trim().isEmpty() && !newGenre.equalsIgnoreCase(oldGenre)) {
+        // индексы перестраиваются по новым значениям, поэтому книгу сначала из них убираем.
+        // Индексы по названию и автору построены по ключу: если он не меняется (смена жанра
+        // или года), их не трогаем - перестройка поисковых индексов самая дорогая часть правки
+        // перенос в другой жанр - два изменения списков, а читатели должны увидеть одно
+        holdPublishing();
+        unpublishedChanges++;
+        bookBeingEdited = bookToEdit;
+        invalidateQueries(bookToEdit);
+        if (keyChanged) {
+            unindexBook(bookToEdit);
+        } else {
+            byYear.remove(bookToEdit);
+        }
+        if (genreChanged) {
+            removeFromGenre(bookToEdit, oldGenre);
+        }
 
-                List<Book> oldList = booksByGenre.get(oldGenre);
-                if (oldList != null) {
-                    oldList.remove(bookToEdit);
-                    if (oldList.isEmpty()) {
-                        booksByGenre.remove(oldGenre);
-                    }
-                }
+        try {
+            bookToEdit.setGenre(targetGenre);
+            bookToEdit.setName(targetName);
+            bookToEdit.setAuthor(targetAuthor);
+            if (newDate != null || exactDate) {
+                bookToEdit.setPublicationDate(newDate);
+            }
+        } catch (RuntimeException e) {
+            bookToEdit.setGenre(oldGenre);
+            bookToEdit.setName(oldName);
+            bookToEdit.setAuthor(oldAuthor);
+            bookToEdit.setPublicationDate(oldDate);
+            targetGenre = oldGenre;
+            throw e;
+        } finally {
+            if (genreChanged) {
+                addToGenre(bookToEdit);
+            } else {
+                updateInGenre(bookToEdit);
+            }
+            if (keyChanged) {
+                indexBook(bookToEdit);
+            } else {
+                byYear.add(bookToEdit);
+            }
+            invalidateQueries(bookToEdit);
+            dirtyGenres.add(oldGenre);
+            dirtyGenres.add(targetGenre);
+            bookBeingEdited = null;
+            releasePublishing();
+        }
 
+        if (journal != null) {
+            journal.logEdit(oldName, oldAuthor, bookToEdit);
+        }
+    }
 
-                booksByGenre.putIfAbsent(newGenre, new ArrayList<>());
+    public void editBook(String name, String newName, String newAuthor, String newGenre, Integer newYear) {
+        LocalDate newDate = null;
+        if (newYear != null && newYear > 0 && newYear <= LocalDate.now().getYear()) {
+            newDate = LocalDate.of(newYear, 1, 1);
+        }
+        editBook(name, newName, newAuthor, newGenre, newDate);
+    }
 
-                String tempName = (newName != null && !newName.trim().isEmpty()) ? newName : bookToEdit.getName();
-                String tempAuthor = (newAuthor != null && !newAuthor.trim().isEmpty()) ? newAuthor : bookToEdit.getAuthor();
+    public void printBooksByGenre(String genre) {
+        printBooksByGenre(genre, 0, Integer.MAX_VALUE);
+    }
 
-                for (Book existingBook : booksByGenre.get(newGenre)) {
-                    if (existingBook.getName().equalsIgnoreCase(tempName) &&
-                            existingBook.getAuthor().equalsIgnoreCase(tempAuthor) &&
-                            !existingBook.equals(bookToEdit)) {
-                        throw new IllegalArgumentException("Книга с таким названием и автором уже существует в жанре: " + newGenre);
-                    }
-                }
+    // печатает limit книг жанра, начиная с offset-й
+    public void printBooksByGenre(String genre, int offset, int limit) {
+        beforeGenreAccess(genre);
+        long start = stats.start();
+        try {
+            if (genre == null || genre.trim().isEmpty()) {
+                System.out.println("Ошибка: жанр не может быть пустым.");
+                return;
+            }
 
-                booksByGenre.get(newGenre).add(bookToEdit);
-                bookToEdit.setGenre(newGenre);
+            LibrarySnapshot snapshot = published.get();
+            if (snapshot.isEmpty()) {
+                System.out.println("Библиотека пуста.");
+                return;
             }
 
-            if (newName != null && !newName.trim().isEmpty()) {
-                bookToEdit.setName(newName);
+            BookVector list = snapshot.getBooks(genre.trim());
+            if (list.isEmpty()) {
+                System.out.println("Жанр \"" + genre + "\" не найден или пуст.");
+                return;
             }
 
-            if (newAuthor != null && !newAuthor.trim().isEmpty()) {
-                bookToEdit.setAuthor(newAuthor);
+            String key = genre.trim();
+            String text = queryCache.get(QueryCache.Kind.GENRE, key, offset, limit);
+            if (text == null) {
+                StringBuilder lines = new StringBuilder();
+                page(List.of(list), offset, limit).forEach(book -> lines.append(book.getName()).append(", ")
+                        .append(book.getAuthor()).append(", ").append(yearInfo(book)).append(System.lineSeparator()));
+                text = lines.toString();
+                queryCache.put(QueryCache.Kind.GENRE, key, offset, limit, text);
             }
 
-            if (newDate != null) {
-                bookToEdit.setPublicationDate(newDate);
+            System.out.println("Жанр: " + genre);
+            System.out.print(text);
+            System.out.println();
+        } finally {
+            stats.record(LibraryStats.Operation.PRINT_GENRE, start);
+        }
+    }
+
+    public void printAllBooks() {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            // вывод идёт по снимку: изменения во время печати в него не попадут
+            LibrarySnapshot snapshot = published.get();
+            if (snapshot.isEmpty()) {
+                System.out.println("Библиотека пуста.");
+                return;
             }
 
-        } catch (Exception e) {
-            if (!bookToEdit.getGenre().equals(oldGenre)) {
-                bookToEdit.setGenre(oldGenre);
+            System.out.println("Список всех книг в библиотеке:");
+            for (String genre : snapshot.getGenres()) {
+                System.out.println("\nЖанр: " + genre);
+                for (Book book : snapshot.getBooks(genre)) {
+                    System.out.printf(" - \"%s\" (%s, %s)\n", book.getName(), book.getAuthor(), yearInfo(book));
+                }
             }
-            throw e;
+        } finally {
+            stats.record(LibraryStats.Operation.PRINT_ALL, start);
         }
     }
 
-    public void editBook(String name, String newName, String newAuthor, String newGenre, Integer newYear) {
-        LocalDate newDate = null;
-        if (newYear != null && newYear > 0 && newYear <= LocalDate.now().getYear()) {
-            newDate = LocalDate.of(newYear, 1, 1);
+    // печатает limit книг из сквозного списка в порядке order, начиная с offset-й
+    public void printAllBooks(SortOrder order, int offset, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            if (bookKeys.isEmpty()) {
+                System.out.println("Библиотека пуста.");
+                return;
+            }
+
+            checkPage(offset, limit);
+            sortedView(order).page(offset, limit).forEach(book ->
+                    System.out.printf(" - \"%s\" (%s, %s, %s)\n", book.getName(), book.getAuthor(),
+                            book.getGenre(), yearInfo(book)));
+        } finally {
+            stats.record(LibraryStats.Operation.PRINT_ALL, start);
         }
-        editBook(name, newName, newAuthor, newGenre, newDate);
     }
 
-    public void printBooksByGenre(String genre) {
-        if (genre == null || genre.trim().isEmpty()) {
-            System.out.println("Ошибка: жанр не может быть пустым.");
-            return;
+    // Ленивые выборки: книги не копируются, offset и limit отсекаются по размерам списков,
+    // поэтому страница стоит O(limit).
+    // Правило для всех выборок и поиска одно: книги снимка (snapshot(), queryAllBooks(offset, limit),
+    // queryBooksByGenre) только для чтения - их сеттеры бросают UnsupportedOperationException;
+    // остальные методы возвращают сами книги библиотеки, и правка через их сеттеры попадает в библиотеку.
+    // Выборки по снимку можно дочитывать сколько угодно, остальные - только до изменения библиотеки.
+
+    public Stream<Book> queryAllBooks(int offset, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            return page(published.get().getBooksByGenre(), offset, limit);
+        } finally {
+            stats.record(LibraryStats.Operation.QUERY, start);
         }
+    }
 
-        if (booksByGenre.isEmpty()) {
-            System.out.println("Библиотека пуста.");
-            return;
+    // страница сквозного списка: O(log n + limit) при любом offset, без сортировки
+    public Stream<Book> queryAllBooks(SortOrder order, int offset, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            checkPage(offset, limit);
+            return sortedView(order).page(offset, limit);
+        } finally {
+            stats.record(LibraryStats.Operation.QUERY, start);
         }
+    }
 
-        ArrayList<Book> list = booksByGenre.get(genre.trim());
-        if (list == null || list.isEmpty()) {
-            System.out.println("Жанр \"" + genre + "\" не найден или пуст.");
-            return;
+    public Stream<Book> queryBooksByGenre(String genre, int offset, int limit) {
+        beforeGenreAccess(genre);
+        long start = stats.start();
+        try {
+            BookVector list = (genre == null) ? BookVector.EMPTY : published.get().getBooks(genre.trim());
+            return page(List.of(list), offset, limit);
+        } finally {
+            stats.record(LibraryStats.Operation.QUERY, start);
         }
+    }
 
-        System.out.println("Жанр: " + genre);
-        for (Book book : list) {
-            String dateInfo = (book.getPublicationDate() != null) ?
-                    String.valueOf(book.getPublicationDate().getYear()) : "неизвестен";
-            System.out.println(book.getName() + ", " + book.getAuthor() + ", " + dateInfo);
+    public Stream<Book> queryBooksByAuthor(String author, int offset, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            ArrayList<Book> list = (author == null || author.trim().isEmpty()) ? null
+                    : booksByAuthor.get(Book.normalize(author));
+            return page(list == null ? List.of() : List.of(list), offset, limit);
+        } finally {
+            stats.record(LibraryStats.Operation.QUERY, start);
         }
-        System.out.println();
     }
 
-    public void printAllBooks() {
-        if (booksByGenre.isEmpty()) {
-            System.out.println("Библиотека пуста.");
-            return;
+    public Stream<Book> queryBooksByYearRange(int from, int to, int offset, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            checkPage(offset, limit);
+            return yearRange(from, to, offset, limit);
+        } finally {
+            stats.record(LibraryStats.Operation.QUERY, start);
         }
+    }
 
-        System.out.println("Список всех книг в библиотеке:");
-        for (Map.Entry<String, ArrayList<Book>> entry : booksByGenre.entrySet()) {
-            String genre = entry.getKey();
-            ArrayList<Book> list = entry.getValue();
+    public int countBooks() {
+        beforeAccess();
+        return bookKeys.size();
+    }
+
+    public void removeBookByName(String name) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            if (name == null || name.trim().isEmpty()) {
+                System.out.println("Ошибка: название книги не может быть пустым.");
+                return;
+            }
+
+            List<Book> books = booksToRemoveByName(name);
+            if (books.isEmpty()) {
+                System.out.println("Книга \"" + name + "\" не найдена в библиотеке.");
+                return;
+            }
+
+            String genre = books.get(0).getGenre();
+            for (Book book : books) {
+                removeBook(book);
+            }
 
-            System.out.println("\nЖанр: " + genre);
-            for (Book book : list) {
-                String dateInfo = (book.getPublicationDate() != null) ?
-                        String.valueOf(book.getPublicationDate().getYear()) : "неизвестен";
-                System.out.printf(" - \"%s\" (%s, %s)\n", book.getName(), book.getAuthor(), dateInfo);
+            System.out.println("Книга \"" + name + "\" удалена из жанра \"" + genre + "\".");
+            if (!booksByGenre.containsGenre(genre)) {
+                System.out.println("Жанр \"" + genre + "\" удалён, так как больше нет книг.");
             }
+        } finally {
+            stats.record(LibraryStats.Operation.REMOVE_BOOK, start);
         }
     }
 
-    public void removeBookByName(String name) {
+    // То же без вывода сообщений (для сервера): возвращает число удалённых книг, 0 - книги нет.
+    // Поиск и удаление идут одним вызовом, поэтому ConcurrentLibrary выполняет их под одной блокировкой.
+    public int removeBooksByNameQuietly(String name) {
+        beforeAccess();
         if (name == null || name.trim().isEmpty()) {
-            System.out.println("Ошибка: название книги не может быть пустым.");
-            return;
+            throw new IllegalArgumentException("Название книги не может быть пустым");
         }
 
-        boolean found = false;
-        String nameToRemove = name.trim();
+        long start = stats.start();
+        try {
+            List<Book> books = booksToRemoveByName(name);
+            for (Book book : books) {
+                removeBook(book);
+            }
+            return books.size();
+        } finally {
+            stats.record(LibraryStats.Operation.REMOVE_BOOK, start);
+        }
+    }
+
+    // как и раньше, удаляются все книги с этим названием из жанра первой найденной
+    private List<Book> booksToRemoveByName(String name) {
+        ArrayList<Book> result = new ArrayList<>();
+        ArrayList<Book> sameName = booksByName.get(Book.normalize(name));
+        if (sameName != null && !sameName.isEmpty()) {
+            String genre = sameName.get(0).getGenre();
+            for (Book book : sameName) {
+                if (book.getGenre().equals(genre)) {
+                    result.add(book);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Применяет все операции пакета или ни одной (см. BookBatch). Сначала проверяется весь пакет,
+    // затем операции выполняются по порядку; если какая-то не прошла (нет книги, дубликат),
+    // выполненные откатываются в обратном порядке. Изменения и их откат попадают в журнал
+    // одним пакетом записей, поэтому при воспроизведении журнала результат тот же.
+    public void applyBatch(BookBatch batch) {
+        beforeAccess();
+        long start = stats.start();
+        int appliedCount = 0;
+        try {
+            appliedCount = applyOperations(batch);
+        } finally {
+            stats.record(LibraryStats.Operation.APPLY_BATCH, start, appliedCount, 0);
+        }
+    }
 
-        for (Map.Entry<String, ArrayList<Book>> entry : booksByGenre.entrySet()) {
-            String genre = entry.getKey();
-            ArrayList<Book> list = entry.getValue();
+    // переносит все книги жанра from в жанр into одним пакетом; возвращает число книг
+    public int mergeGenre(String from, String into) {
+        beforeAccess();
+        if (from == null || from.trim().isEmpty() || into == null || into.trim().isEmpty()) {
+            throw new IllegalArgumentException("Жанр не может быть пустым");
+        }
 
-            boolean removed = list.removeIf(book -> book.getName().equalsIgnoreCase(nameToRemove));
+        long start = stats.start();
+        int appliedCount = 0;
+        try {
+            BookVector books = booksByGenre.getBooks(from.trim());
+            if (books.isEmpty()) {
+                throw new IllegalArgumentException("Жанр \"" + from + "\" не найден.");
+            }
+            BookBatch batch = new BookBatch();
+            for (Book book : books) {
+                batch.edit(book.getName(), book.getAuthor(), null, null, into.trim(), null);
+            }
+            appliedCount = applyOperations(batch);
+            return appliedCount;
+        } finally {
+            stats.record(LibraryStats.Operation.APPLY_BATCH, start, appliedCount, 0);
+        }
+    }
 
-            if (removed) {
-                found = true;
-                System.out.println("Книга \"" + name + "\" удалена из жанра \"" + genre + "\".");
+    private int applyOperations(BookBatch batch) {
+        if (batch == null) {
+            throw new IllegalArgumentException("Пакет изменений не может быть null");
+        }
+        batch.validate();
 
-                if (list.isEmpty()) {
-                    booksByGenre.remove(genre);
-                    System.out.println("Жанр \"" + genre + "\" удалён, так как больше нет книг.");
+        List<BookBatch.Operation> operations = batch.getOperations();
+        ArrayDeque<Runnable> undo = new ArrayDeque<>();
+        if (journal != null) {
+            journal.beginBatch();
+        }
+        // читатели видят библиотеку до пакета или после него целиком
+        holdPublishing();
+        try {
+            for (int i = 0; i < operations.size(); i++) {
+                try {
+                    applyOperation(operations.get(i), undo);
+                } catch (RuntimeException e) {
+                    while (!undo.isEmpty()) {
+                        undo.pop().run();
+                    }
+                    throw new IllegalArgumentException("Пакет изменений отменён: операция " + (i + 1) + " (" +
+                            operations.get(i).describe() + "): " + e.getMessage(), e);
+                }
+            }
+            return operations.size();
+        } finally {
+            releasePublishing();
+            if (journal != null) {
+                try {
+                    journal.endBatch();
+                } catch (IOException e) {
+                    throw new RuntimeException("Ошибка при записи журнала: " + e.getMessage(), e);
                 }
+            }
+        }
+    }
+
+    private void applyOperation(BookBatch.Operation operation, Deque<Runnable> undo) {
+        switch (operation.type) {
+            case ADD -> {
+                storeBook(operation.book);
+                undo.push(() -> removeBook(operation.book));
+            }
+            case EDIT -> {
+                Book book = (operation.author == null) ? firstBookByName(operation.name)
+                        : findBook(new Book.Key(operation.name, operation.author));
+                if (book == null) {
+                    throw new IllegalArgumentException("Книга \"" + operation.name + "\" не найдена.");
+                }
+                String oldName = book.getName();
+                String oldAuthor = book.getAuthor();
+                String oldGenre = book.getGenre();
+                LocalDate oldDate = book.getPublicationDate();
+                LocalDate newDate = (operation.newYear == null) ? null : LocalDate.of(operation.newYear, 1, 1);
+                long[] positions = listPositions(book);
+                editBook(book, operation.newName, operation.newAuthor, operation.newGenre, newDate);
+                undo.push(() -> {
+                    // год восстанавливается как был, в том числе неизвестный; в журнал - одна запись
+                    restoreBook(book, oldName, oldAuthor, oldGenre, oldDate);
+                    restoreListPositions(book, positions);
+                });
+            }
+            case REMOVE -> {
+                List<Book> books;
+                if (operation.author == null) {
+                    books = booksToRemoveByName(operation.name);
+                } else {
+                    Book book = findBook(new Book.Key(operation.name, operation.author));
+                    books = (book == null) ? List.of() : List.of(book);
+                }
+                if (books.isEmpty()) {
+                    throw new IllegalArgumentException("Книга \"" + operation.name + "\" не найдена.");
+                }
+                for (Book book : books) {
+                    long[] positions = listPositions(book);
+                    removeBook(book);
+                    undo.push(() -> {
+                        storeBook(book);
+                        restoreListPositions(book, positions);
+                    });
+                }
+            }
+        }
+    }
+
+    // Место книги в порядке жанра и в списках названия и автора. Повторное добавление ставит
+    // книгу в конец списков; откат пакета возвращает её на прежнее место, чтобы не менялись
+    // порядок вывода жанра и то, какую из книг с одинаковым названием находит поиск по названию.
+    // Откат идёт строго в обратном порядке, так что прежние номера к этому моменту снова верны.
+    private long[] listPositions(Book book) {
+        return new long[] {
+                book.getGenreOrder(),
+                indexOf(booksByName.get(book.getKey().getName()), book),
+                indexOf(booksByAuthor.get(book.getKey().getAuthor()), book)
+        };
+    }
+
+    private void restoreListPositions(Book book, long[] positions) {
+        // в жанре книга встаёт на место по прежнему номеру в порядке жанра
+        if (book.getGenreOrder() != positions[0]) {
+            removeFromGenre(book, book.getGenre());
+            book.setGenreOrder(positions[0]);
+            BookVector genreBooks = booksByGenre.getBooks(book.getGenre());
+            int index = -genreBooks.searchOrder(positions[0]) - 1;
+            setGenreBooks(book.getGenre(), genreBooks.inserted(index, book.detachedCopy()));
+        }
+        moveTo(booksByName.get(book.getKey().getName()), book, (int) positions[1]);
+        moveTo(booksByAuthor.get(book.getKey().getAuthor()), book, (int) positions[2]);
+    }
+
+    private static int indexOf(List<Book> list, Book book) {
+        for (int i = 0; list != null && i < list.size(); i++) {
+            if (list.get(i) == book) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void moveTo(List<Book> list, Book book, int position) {
+        // возвращённая книга обычно в конце списка
+        int current = -1;
+        for (int i = (list == null) ? -1 : list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == book) {
+                current = i;
                 break;
             }
         }
+        if (current >= 0 && position >= 0 && position < list.size() && current != position) {
+            list.remove(current);
+            list.add(position, book);
+        }
+    }
+
+    void removeBook(Book book) {
+        invalidateQueries(book);
+        dirtyGenres.add(book.getGenre());
+        unindexBook(book);
+        unpublishedChanges++;
+        removeFromGenre(book, book.getGenre());
+        book.setLibrary(null);
+
+        if (journal != null) {
+            journal.logRemove(book);
+        }
+    }
 
-        if (!found) {
-            System.out.println("Книга \"" + name + "\" не найдена в библиотеке.");
+    Book findBook(Book.Key key) {
+        beforeAccess();
+        ArrayList<Book> sameName = booksByName.get(key.getName());
+        if (sameName != null) {
+            for (Book book : sameName) {
+                if (book.getKey().equals(key)) {
+                    return book;
+                }
+            }
         }
+        return null;
+    }
+
+    // Книги по жанрам на текущий момент, за O(1). Снимок не меняется вместе с библиотекой,
+    // поэтому его можно читать и сохранять в другом потоке сколько угодно долго; книги в нём только для чтения.
+    public LibrarySnapshot snapshot() {
+        beforeAccess();
+        return published.get();
+    }
+
+    // то же для потока, который сейчас меняет библиотеку (журнал посреди пакета или загрузки):
+    // сюда входят и ещё не опубликованные изменения
+    LibrarySnapshot currentSnapshot() {
+        beforeAccess();
+        flushPendingGenres();
+        return booksByGenre;
     }
 
     public Book findBookByName(String name) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            return firstBookByName(name);
+        } finally {
+            stats.record(LibraryStats.Operation.FIND_BY_NAME, start);
+        }
+    }
+
+    private Book firstBookByName(String name) {
         if (name == null || name.trim().isEmpty()) {
             return null;
         }
 
-        String nameToFind = name.trim();
-        for (ArrayList<Book> list : booksByGenre.values()) {
-            for (Book book : list) {
-                if (book.getName().equalsIgnoreCase(nameToFind)) {
-                    return book;
+        ArrayList<Book> sameName = booksByName.get(Book.normalize(name));
+        return (sameName == null || sameName.isEmpty()) ? null : sameName.get(0);
+    }
+
+    public void findBooksByAuthor(String author) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            if (author == null || author.trim().isEmpty()) {
+                System.out.println("Ошибка: автор не может быть пустым.");
+                return;
+            }
+
+            String key = Book.normalize(author);
+            ArrayList<Book> list = booksByAuthor.get(key);
+
+            if (list == null || list.isEmpty()) {
+                System.out.println("Книги автора \"" + author + "\" не найдены.");
+            } else {
+                String text = queryCache.get(QueryCache.Kind.AUTHOR, key, 0, Integer.MAX_VALUE);
+                if (text == null) {
+                    StringBuilder lines = new StringBuilder();
+                    for (Book book : list) {
+                        lines.append(" - ").append(book.getName()).append(System.lineSeparator());
+                    }
+                    text = lines.toString();
+                    queryCache.put(QueryCache.Kind.AUTHOR, key, 0, Integer.MAX_VALUE, text);
                 }
+                System.out.println("Книги автора " + author + ": ");
+                System.out.print(text);
             }
+            System.out.println();
+        } finally {
+            stats.record(LibraryStats.Operation.FIND_BY_AUTHOR, start);
         }
-        return null;
     }
 
-    public void findBooksByAuthor(String author) {
-        if (author == null || author.trim().isEmpty()) {
-            System.out.println("Ошибка: автор не может быть пустым.");
-            return;
+    // книги, у которых название или автор начинаются с prefix (без учёта регистра)
+    public List<Book> findBooksByPrefix(String prefix, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            LinkedHashSet<Book> result = new LinkedHashSet<>();
+            if (prefix == null || prefix.trim().isEmpty()) {
+                return new ArrayList<>(result);
+            }
+
+            String query = Book.normalize(prefix);
+            titleSearch.findByPrefix(query, limit, result);
+            authorSearch.findByPrefix(query, limit, result);
+            return new ArrayList<>(result);
+        } finally {
+            stats.record(LibraryStats.Operation.FIND_BY_PREFIX, start);
         }
+    }
 
-        ArrayList<Book> result = new ArrayList<>();
-        String authorToFind = author.trim();
+    // книги, у которых название или автор содержат part (без учёта регистра)
+    public List<Book> findBooksBySubstring(String part, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            LinkedHashSet<Book> result = new LinkedHashSet<>();
+            if (part == null || part.trim().isEmpty()) {
+                return new ArrayList<>(result);
+            }
 
-        for (ArrayList<Book> list : booksByGenre.values()) {
-            for (Book book : list) {
-                if (book.getAuthor().equalsIgnoreCase(authorToFind)) {
-                    result.add(book);
-                }
+            String query = Book.normalize(part);
+            titleSearch.findBySubstring(query, limit, result);
+            authorSearch.findBySubstring(query, limit, result);
+            return new ArrayList<>(result);
+        } finally {
+            stats.record(LibraryStats.Operation.FIND_BY_SUBSTRING, start);
+        }
+    }
+
+    // Книги, у которых название или автор отличаются от query не больше чем на maxDistance
+    // правок (опечатки). Сначала точные совпадения, затем в одну правку и так далее;
+    // при равном расстоянии совпадения по названию идут раньше совпадений по автору.
+    public List<Book> findBooksFuzzy(String query, int maxDistance, int limit) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            LinkedHashSet<Book> result = new LinkedHashSet<>();
+            if (query == null || query.trim().isEmpty()) {
+                return new ArrayList<>(result);
+            }
+
+            String normalized = Book.normalize(query);
+            if (normalized.length() > MAX_FUZZY_QUERY_LENGTH) {
+                throw new IllegalArgumentException("Запрос для нечёткого поиска длиннее " +
+                        MAX_FUZZY_QUERY_LENGTH + " символов");
             }
+            for (int distance = 0; distance <= maxDistance && result.size() < limit; distance++) {
+                titleSearch.findAtDistance(normalized, distance, limit, result);
+                authorSearch.findAtDistance(normalized, distance, limit, result);
+            }
+            return new ArrayList<>(result);
+        } finally {
+            stats.record(LibraryStats.Operation.FIND_FUZZY, start);
         }
+    }
 
-        if (result.isEmpty()) {
-            System.out.println("Книги автора \"" + author + "\" не найдены.");
-        } else {
-            System.out.println("Книги автора " + author + ": ");
-            for (Book book : result) {
-                System.out.println(" - " + book.getName());
+    // сколько опечаток допускать в запросе такой длины: в коротком слове две правки - уже другое слово
+    public static int typoAllowance(String query) {
+        return (query.trim().length() <= 4) ? 1 : 2;
+    }
+
+    // Жанры не дальше maxDistance правок от genre, ближайшие первыми.
+    // Жанров немного, поэтому они сравниваются с запросом все, без индекса.
+    public List<String> findGenresFuzzy(String genre, int maxDistance) {
+        beforeAccess();
+        ArrayList<String> result = new ArrayList<>();
+        if (genre == null || genre.trim().isEmpty()) {
+            return result;
+        }
+
+        String normalized = Book.normalize(genre);
+        HashMap<String, Integer> distances = new HashMap<>();
+        for (String candidate : published.get().getGenres()) {
+            int distance = TextSearchIndex.editDistance(Book.normalize(candidate), normalized);
+            if (distance <= maxDistance) {
+                distances.put(candidate, distance);
+                result.add(candidate);
             }
         }
-        System.out.println();
+        result.sort(Comparator.comparing((String candidate) -> distances.get(candidate))
+                .thenComparing(Comparator.naturalOrder()));
+        return result;
+    }
+
+    // книги с годом издания от from до to включительно, по возрастанию года
+    public List<Book> findBooksByYearRange(int from, int to) {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            return yearRange(from, to, 0, Integer.MAX_VALUE).collect(Collectors.toCollection(ArrayList::new));
+        } finally {
+            stats.record(LibraryStats.Operation.FIND_BY_YEAR, start);
+        }
+    }
+
+    public List<Book> findBooksWithoutYear() {
+        beforeAccess();
+        long start = stats.start();
+        try {
+            // книги с неизвестным годом - хвост порядка по году
+            int known = byYear.countBefore(book -> book.getDate() > 0);
+            return byYear.page(known, byYear.size() - known).collect(Collectors.toCollection(ArrayList::new));
+        } finally {
+            stats.record(LibraryStats.Operation.FIND_BY_YEAR, start);
+        }
+    }
+
+    // Book сообщает о смене года, в том числе при вызове setDate в обход editBook:
+    // до смены книга убирается из порядка по году (найти её там можно только по старому году),
+    // после - возвращается. editBook сам убирает книгу из индексов до изменения и возвращает после
+    void yearChanging(Book book) {
+        if (book != bookBeingEdited) {
+            byYear.remove(book);
+        }
+    }
+
+    void yearChanged(Book book) {
+        if (book != bookBeingEdited) {
+            byYear.add(book);
+            unpublishedChanges++;
+            updateInGenre(book);
+        }
+        queryCache.invalidate(QueryCache.Kind.GENRE, book.getGenre());
+        dirtyGenres.add(book.getGenre());
+
+        if (journal != null && book != bookBeingEdited) {
+            journal.logEdit(book.getName(), book.getAuthor(), book);
+        }
     }
 
     public void loadBooksFromFile(String filePath) {
+        loadBooksFromFile(filePath, false);
+    }
+
+    // parallel = true: файл разбирается по частям в ForkJoinPool, затем книги
+    // добавляются в порядке файла, поэтому результат совпадает с последовательной загрузкой.
+    // Строки, которые не разбираются, и повторы уже загруженных книг пропускаются
+    // и перечисляются с номерами строк: одна испорченная строка не должна обрывать загрузку.
+    public void loadBooksFromFile(String filePath, boolean parallel) {
+        beforeAccess();
+        readBooksFromFile(filePath, parallel);
+    }
+
+    // то же без beforeAccess: так LazyLibrary загружает свой каталог
+    void readBooksFromFile(String filePath, boolean parallel) {
         if (filePath == null || filePath.trim().isEmpty()) {
             throw new IllegalArgumentException("Путь к файлу не может быть пустым");
         }
@@ -230,62 +903,67 @@ public class Library {
             throw new RuntimeException("Нет прав на чтение файла: " + filePath);
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            Pattern pattern = Pattern.compile(
-                    "\\[name = \"(.*?)\", author = \"(.*?)\", genre = \"(.*?)\", year = (-?\\d+)\\]"
-            );
-
-            int loadedCount = 0;
-            while ((line = reader.readLine()) != null) {
-                Matcher matcher = pattern.matcher(line);
-                if (matcher.find()) {
-                    String name = matcher.group(1);
-                    String author = matcher.group(2);
-                    String genre = matcher.group(3);
-                    int year = Integer.parseInt(matcher.group(4));
-
-                    if (author.isEmpty()) author = "Неизвестен";
-                    if (genre.isEmpty()) genre = "Не указан";
-
-                    LocalDate publicationDate = null;
-                    if (year > 0 && year <= LocalDate.now().getYear()) {
-                        publicationDate = LocalDate.of(year, 1, 1);
+        long start = stats.start();
+        int loadedCount = 0;
+        // пропущенные строки по номерам
+        TreeMap<Integer, String> skipped = new TreeMap<>();
+        beginBulkLoad();
+        try {
+            if (parallel) {
+                ParallelBookLoader.ParsedFile parsed = ParallelBookLoader.parseFileSkippingErrors(filePath);
+                for (BookRecordParser.ParseException e : parsed.getSkipped()) {
+                    skipped.put(e.getLine(), e.getMessage());
+                }
+                List<Book> books = parsed.getBooks();
+                for (int i = 0; i < books.size(); i++) {
+                    try {
+                        storeBook(books.get(i));
+                        loadedCount++;
+                    } catch (IllegalArgumentException e) {
+                        skipped.put(parsed.getLine(i), "строка " + parsed.getLine(i) + ": " + e.getMessage());
+                    }
+                }
+            } else {
+                BookRecordParser parser = new BookRecordParser(BookRecordParser.readFile(filePath));
+                while (true) {
+                    try {
+                        if (!parser.next()) {
+                            break;
+                        }
+                        storeBook(parser.toBook());
+                        loadedCount++;
+                    } catch (BookRecordParser.ParseException e) {
+                        skipped.put(e.getLine(), e.getMessage());
+                        parser.skipLine();
+                    } catch (IllegalArgumentException e) {
+                        skipped.put(parser.getLine(), "строка " + parser.getLine() + ": " + e.getMessage());
                     }
-
-                    Book book = new Book(name, author, genre, publicationDate);
-                    addBook(book);
-                    loadedCount++;
                 }
             }
 
             System.out.println("Успешно загружено " + loadedCount + " книг из файла: " + filePath);
+            reportSkippedLines(skipped);
 
         } catch (IOException e) {
             throw new RuntimeException("Ошибка при чтении файла: " + e.getMessage(), e);
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Ошибка формата данных в файле: " + e.getMessage(), e);
+        } finally {
+            endBulkLoad(false);
+            stats.record(LibraryStats.Operation.LOAD_TEXT, start, loadedCount, file.length());
         }
     }
 
     public void saveBooksToFile(String filePath) {
+        beforeAccess();
         if (filePath == null || filePath.trim().isEmpty()) {
             throw new IllegalArgumentException("Путь к файлу не может быть пустым");
         }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            int savedCount = 0;
-            for (Map.Entry<String, ArrayList<Book>> entry : booksByGenre.entrySet()) {
-                for (Book book : entry.getValue()) {
-                    int year = (book.getPublicationDate() != null) ? book.getPublicationDate().getYear() : -1;
-                    String line = String.format(
-                            "[name = \"%s\", author = \"%s\", genre = \"%s\", year = %d]",
-                            book.getName(),
-                            book.getAuthor(),
-                            book.getGenre(),
-                            year
-                    );
-                    writer.write(line);
+        long start = stats.start();
+        int savedCount = 0;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath, StandardCharsets.UTF_8))) {
+            for (BookVector books : published.get().getBooksByGenre()) {
+                for (Book book : books) {
+                    BookRecordParser.writeRecord(writer, book);
                     writer.newLine();
                     savedCount++;
                 }
@@ -293,10 +971,190 @@ public class Library {
             System.out.println("Успешно сохранено " + savedCount + " книг в файл: " + filePath);
         } catch (IOException e) {
             throw new RuntimeException("Ошибка при сохранении в файл: " + e.getMessage(), e);
+        } finally {
+            stats.record(LibraryStats.Operation.SAVE_TEXT, start, savedCount, new File(filePath).length());
+        }
+    }
+
+    public void saveSnapshot(String filePath) {
+        beforeAccess();
+        if (filePath == null || filePath.trim().isEmpty()) {
+            throw new IllegalArgumentException("Путь к файлу не может быть пустым");
+        }
+
+        long start = stats.start();
+        int savedCount = 0;
+        try {
+            savedCount = BookSnapshot.write(filePath, published.get().getBooksByGenre());
+            System.out.println("Успешно сохранено " + savedCount + " книг в снимок: " + filePath);
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка при сохранении снимка: " + e.getMessage(), e);
+        } finally {
+            stats.record(LibraryStats.Operation.SAVE_SNAPSHOT, start, savedCount, new File(filePath).length());
+        }
+    }
+
+    public void loadSnapshot(String filePath) {
+        beforeAccess();
+        if (filePath == null || filePath.trim().isEmpty()) {
+            throw new IllegalArgumentException("Путь к файлу не может быть пустым");
+        }
+
+        File file = new File(filePath);
+        if (!file.exists()) {
+            throw new RuntimeException("Файл не существует: " + filePath);
+        }
+        if (!file.canRead()) {
+            throw new RuntimeException("Нет прав на чтение файла: " + filePath);
+        }
+
+        long start = stats.start();
+        int loadedCount = 0;
+        try {
+            loadedCount = addAll(BookSnapshot.read(filePath));
+            System.out.println("Успешно загружено " + loadedCount + " книг из снимка: " + filePath);
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка при чтении снимка: " + e.getMessage(), e);
+        } finally {
+            stats.record(LibraryStats.Operation.LOAD_SNAPSHOT, start, loadedCount, file.length());
+        }
+    }
+
+    // Книги, прочитанные из хранилища (снимок, в том числе при открытии журнала), добавляются пакетом:
+    // упорядоченные списки строятся один раз, версия публикуется одна, автосохранению писать нечего
+    int addAll(List<Book> books) {
+        beforeAccess();
+        int addedCount = 0;
+        beginBulkLoad();
+        try {
+            for (Book book : books) {
+                storeBook(book);
+                addedCount++;
+            }
+        } finally {
+            endBulkLoad(false);
+        }
+        return addedCount;
+    }
+
+    public void saveSegments(String directory) {
+        beforeAccess();
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Путь к папке не может быть пустым");
+        }
+
+        long start = stats.start();
+        int savedCount = 0;
+        long byteCount = 0;
+        try {
+            // в другую папку библиотека пишется целиком, а жанры, которых больше нет, удаляются
+            Set<String> changed = dirtyGenres;
+            if (segments == null || !segments.isAt(directory)) {
+                segments = GenreSegmentStore.open(directory);
+                changed = new HashSet<>(booksByGenre.getGenres());
+                changed.addAll(segments.getGenres());
+            }
+
+            LinkedHashMap<String, List<Book>> changedGenres = new LinkedHashMap<>();
+            for (String genre : changed) {
+                changedGenres.put(genre, booksByGenre.getBooks(genre));
+            }
+            HashSet<String> genresBefore = new HashSet<>(segments.getGenres());
+            savedCount = segments.write(changedGenres);
+            int rewritten = 0;
+            int removed = 0;
+            for (String genre : changedGenres.keySet()) {
+                byteCount += segments.getFileSize(genre);
+                if (segments.contains(genre)) {
+                    rewritten++;
+                } else if (genresBefore.contains(genre)) {
+                    removed++;
+                }
+            }
+            dirtyGenres.clear();
+            System.out.println("Записано жанров: " + rewritten + " (" + savedCount + " книг), удалено: " + removed +
+                    ", без изменений: " + (segments.getGenres().size() - rewritten) + ", папка: " + directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка при сохранении сегментов: " + e.getMessage(), e);
+        } finally {
+            stats.record(LibraryStats.Operation.SAVE_SEGMENTS, start, savedCount, byteCount);
+        }
+    }
+
+    public void loadSegments(String directory) {
+        loadSegments(directory, null);
+    }
+
+    // загружает из папки сегментов только перечисленные жанры (genres == null - все);
+    // жанры, которых в папке нет, пропускаются
+    public void loadSegments(String directory, Collection<String> genres) {
+        beforeAccess();
+        readSegments(directory, genres);
+    }
+
+    // то же без beforeAccess: так SegmentedLibrary догружает жанры, не загружая остальные
+    void readSegments(String directory, Collection<String> genres) {
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Путь к папке не может быть пустым");
+        }
+
+        long start = stats.start();
+        int loadedCount = 0;
+        long byteCount = 0;
+        beginBulkLoad();
+        try {
+            GenreSegmentStore store = (segments != null && segments.isAt(directory))
+                    ? segments : GenreSegmentStore.open(directory);
+            if (!store.exists()) {
+                throw new RuntimeException("В папке нет манифеста сегментов: " + directory);
+            }
+
+            int genreCount = 0;
+            for (String genre : new ArrayList<>((genres == null) ? store.getGenres() : genres)) {
+                if (!store.contains(genre)) {
+                    continue;
+                }
+                // жанр, в котором уже были книги, с сегментом больше не совпадает
+                boolean wasEmpty = !booksByGenre.containsGenre(genre) && !pendingGenres.containsKey(genre);
+                for (Book book : store.read(genre)) {
+                    storeBook(book);
+                    loadedCount++;
+                }
+                if (wasEmpty) {
+                    dirtyGenres.remove(genre);
+                }
+                byteCount += store.getFileSize(genre);
+                genreCount++;
+            }
+            segments = store;
+            System.out.println("Успешно загружено " + loadedCount + " книг из " + genreCount +
+                    " жанров папки: " + directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка при чтении сегментов: " + e.getMessage(), e);
+        } catch (BookRecordParser.ParseException e) {
+            throw new RuntimeException("Ошибка формата данных в сегменте: " + e.getMessage(), e);
+        } finally {
+            endBulkLoad(false);
+            stats.record(LibraryStats.Operation.LOAD_SEGMENTS, start, loadedCount, byteCount);
         }
     }
 
     public void importBooksFromFile(String filePath) {
+        beforeAccess();
+        importFile(filePath, true);
+    }
+
+    // Импорт из файла, папки или по шаблону без вывода сообщений (для сервера):
+    // возвращает число добавленных книг
+    public int importBooksQuietly(String source) {
+        beforeAccess();
+        if (source != null && new File(source.trim()).isFile()) {
+            return importFile(source.trim(), false);
+        }
+        return importFiles(source, false);
+    }
+
+    private int importFile(String filePath, boolean report) {
         if (filePath == null || filePath.trim().isEmpty()) {
             throw new IllegalArgumentException("Путь к файлу не может быть пустым");
         }
@@ -309,49 +1167,369 @@ public class Library {
             throw new RuntimeException("Нет прав на чтение файла: " + filePath);
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            Pattern pattern = Pattern.compile(
-                    "\\[name = \"(.*?)\", author = \"(.*?)\", genre = \"(.*?)\", year = (-?\\d+)\\]"
-            );
+        long start = stats.start();
+        long startTime = System.nanoTime();
+        int importedCount = 0;
+        try {
+            BookRecordParser parser = new BookRecordParser(BookRecordParser.readFile(filePath));
 
-            int importedCount = 0;
+            // сначала весь файл сверяется с ключами библиотеки, и только потом
+            // новые книги добавляются одним проходом
+            HashSet<Book.Key> incomingKeys = new HashSet<>();
+            ArrayList<Book> newBooks = new ArrayList<>();
             int skippedCount = 0;
 
-            while ((line = reader.readLine()) != null) {
-                Matcher matcher = pattern.matcher(line);
-                if (matcher.find()) {
-                    String name = matcher.group(1);
-                    String author = matcher.group(2);
-                    String genre = matcher.group(3);
-                    int year = Integer.parseInt(matcher.group(4));
+            while (parser.next()) {
+                Book book = parser.toBook();
+                if (bookKeys.contains(book.getKey()) || !incomingKeys.add(book.getKey())) {
+                    skippedCount++;
+                } else {
+                    newBooks.add(book);
+                }
+            }
+
+            // изменения журналируются одним пакетом
+            if (journal != null) {
+                journal.beginBatch();
+            }
+            beginBulkLoad();
+            try {
+                for (Book book : newBooks) {
+                    storeBook(book);
+                    importedCount++;
+                }
+            } finally {
+                endBulkLoad(true);
+                if (journal != null) {
+                    journal.endBatch();
+                }
+            }
+
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            if (report) {
+                System.out.println("Импортировано " + newBooks.size() + " новых книг, пропущено " +
+                        skippedCount + " дубликатов из файла: " + filePath + " (за " + elapsedMillis + " мс)");
+            }
+            return importedCount;
 
-                    if (author.isEmpty()) author = "Неизвестен";
-                    if (genre.isEmpty()) genre = "Не указан";
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка при импорте книг: " + e.getMessage(), e);
+        } catch (BookRecordParser.ParseException e) {
+            throw new RuntimeException("Ошибка формата данных в файле: " + e.getMessage(), e);
+        } finally {
+            stats.record(LibraryStats.Operation.IMPORT, start, importedCount, file.length());
+        }
+    }
 
-                    LocalDate publicationDate = null;
-                    if (year > 0 && year <= LocalDate.now().getYear()) {
-                        publicationDate = LocalDate.of(year, 1, 1);
-                    }
+    // Импорт из всех файлов папки или из файлов по шаблону (например, files/drops/*.txt).
+    // Файлы разбираются параллельно, а сверка и добавление идут по файлам в порядке имён,
+    // поэтому из двух одинаковых книг всегда остаётся книга из файла с меньшим именем.
+    // Если хоть один файл не разобрался, библиотека не меняется.
+    public void importBooksFromFiles(String source) {
+        beforeAccess();
+        importFiles(source, true);
+    }
 
+    private int importFiles(String source, boolean report) {
+        if (source == null || source.trim().isEmpty()) {
+            throw new IllegalArgumentException("Путь к файлам не может быть пустым");
+        }
+
+        List<Path> files = resolveImportFiles(source.trim());
+        if (files.isEmpty()) {
+            throw new RuntimeException("Не найдено файлов для импорта: " + source);
+        }
 
-                    Book existingBook = findBookByName(name);
-                    if (existingBook != null && existingBook.getAuthor().equalsIgnoreCase(author)) {
-                        skippedCount++;
+        long start = stats.start();
+        long startTime = System.nanoTime();
+        int importedCount = 0;
+        long byteCount = 0;
+        try {
+            List<List<Book>> parsed = ParallelBookLoader.parseFiles(files);
+
+            HashSet<Book.Key> incomingKeys = new HashSet<>();
+            ArrayList<Book> newBooks = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                int added = 0;
+                int inLibrary = 0;
+                int repeated = 0;
+                for (Book book : parsed.get(i)) {
+                    if (bookKeys.contains(book.getKey())) {
+                        inLibrary++;
+                    } else if (!incomingKeys.add(book.getKey())) {
+                        repeated++;
                     } else {
-                        addBook(new Book(name, author, genre, publicationDate));
-                        importedCount++;
+                        newBooks.add(book);
+                        added++;
                     }
                 }
+                byteCount += files.get(i).toFile().length();
+                if (report) {
+                    System.out.println(files.get(i) + ": новых " + added + ", уже в библиотеке " + inLibrary +
+                            ", повторов из других файлов " + repeated);
+                }
             }
 
-            System.out.println("Импортировано " + importedCount + " новых книг, пропущено " +
-                    skippedCount + " дубликатов из файла: " + filePath);
+            // изменения журналируются одним пакетом
+            if (journal != null) {
+                journal.beginBatch();
+            }
+            beginBulkLoad();
+            try {
+                for (Book book : newBooks) {
+                    storeBook(book);
+                    importedCount++;
+                }
+            } finally {
+                endBulkLoad(true);
+                if (journal != null) {
+                    journal.endBatch();
+                }
+            }
 
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            if (report) {
+                System.out.println("Импортировано " + importedCount + " новых книг из " + files.size() +
+                        " файлов (за " + elapsedMillis + " мс)");
+            }
+            return importedCount;
         } catch (IOException e) {
-            throw new RuntimeException("Ошибка при импорте книг: " + e.getMessage(), e);
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Ошибка формата данных в файле: " + e.getMessage(), e);
+            throw new RuntimeException("Ошибка при записи журнала: " + e.getMessage(), e);
+        } finally {
+            stats.record(LibraryStats.Operation.IMPORT, start, importedCount, byteCount);
+        }
+    }
+
+    private static void reportSkippedLines(SortedMap<Integer, String> skipped) {
+        if (skipped.isEmpty()) {
+            return;
+        }
+        System.out.println("Пропущено строк с ошибками: " + skipped.size());
+        int reported = 0;
+        for (String line : skipped.values()) {
+            if (reported++ == REPORTED_SKIPPED_LINES) {
+                System.out.println("  ... и ещё " + (skipped.size() - REPORTED_SKIPPED_LINES));
+                break;
+            }
+            System.out.println("  " + line);
+        }
+    }
+
+    // Шаблон нельзя передавать в Path.of: в Windows '*' и '?' в пути недопустимы (InvalidPathException).
+    // Поэтому строка делится по последнему разделителю, Path.of получает только папку,
+    // а имя файла уходит в PathMatcher строкой.
+    private static List<Path> resolveImportFiles(String source) {
+        int separator = Math.max(source.lastIndexOf('/'), source.lastIndexOf('\\'));
+        String fileName = source.substring(separator + 1);
+        boolean pattern = fileName.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0);
+        Path directory;
+        PathMatcher matcher;
+        if (!pattern && Files.isDirectory(Path.of(source))) {
+            directory = Path.of(source);
+            matcher = p -> true;
+        } else {
+            directory = (separator >= 0) ? Path.of(source.substring(0, separator + 1)) : Path.of(".");
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + fileName);
+        }
+
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(p.getFileName()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать папку " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void indexBook(Book book) {
+        Book.Key key = book.getKey();
+        bookKeys.add(key);
+        booksByName.computeIfAbsent(key.getName(), k -> new ArrayList<>()).add(book);
+        booksByAuthor.computeIfAbsent(key.getAuthor(), k -> new ArrayList<>()).add(book);
+        titleSearch.add(key.getName(), book);
+        authorSearch.add(key.getAuthor(), book);
+        if (pendingSorted != null) {
+            pendingSorted.add(book);
+        } else {
+            byTitle.add(book);
+            byAuthor.add(book);
+            byYear.add(book);
+        }
+    }
+
+    private void beginBulkLoad() {
+        pendingSorted = new ArrayList<>();
+        pendingGenres = new HashMap<>();
+    }
+
+    // вызывается и при ошибке загрузки: уже добавленные книги должны попасть в списки.
+    // changed == false: книги прочитаны из хранилища, и автосохранению записывать нечего
+    private void endBulkLoad(boolean changed) {
+        byTitle.addAll(pendingSorted);
+        byAuthor.addAll(pendingSorted);
+        byYear.addAll(pendingSorted);
+        pendingSorted = null;
+        flushPendingGenres();
+        pendingGenres = null;
+        if (!changed) {
+            unpublishedChanges = 0;
+        }
+        if (publishHold == 0) {
+            publish();
+        }
+    }
+
+    private void flushPendingGenres() {
+        if (pendingGenres == null) {
+            return;
+        }
+        for (Map.Entry<String, BookVector.Builder> entry : pendingGenres.entrySet()) {
+            booksByGenre = booksByGenre.withGenre(entry.getKey(), entry.getValue().build());
+        }
+        pendingGenres.clear();
+    }
+
+    private void unindexBook(Book book) {
+        Book.Key key = book.getKey();
+        bookKeys.remove(key);
+        removeFromIndex(booksByName, key.getName(), book);
+        removeFromIndex(booksByAuthor, key.getAuthor(), book);
+        titleSearch.remove(key.getName(), book);
+        authorSearch.remove(key.getAuthor(), book);
+        byTitle.remove(book);
+        byAuthor.remove(book);
+        byYear.remove(book);
+    }
+
+    // в выдаче автора и жанра видны название, автор и год книги
+    private void invalidateQueries(Book book) {
+        queryCache.invalidate(QueryCache.Kind.AUTHOR, book.getKey().getAuthor());
+        queryCache.invalidate(QueryCache.Kind.GENRE, book.getGenre());
+    }
+
+    // В жанре лежит копия книги (см. LibrarySnapshot). Попадая в жанр, книга получает следующее
+    // место в порядке жанров, так что книги жанра всегда упорядочены по этим местам
+    // и копия находится двоичным поиском, а не обходом всего жанра.
+    private void addToGenre(Book book) {
+        book.setGenreOrder(++nextGenreOrder);
+        if (pendingGenres != null) {
+            pendingGenres.computeIfAbsent(book.getGenre(), genre -> new BookVector.Builder(booksByGenre.getBooks(genre)))
+                    .add(book.detachedCopy());
+        } else {
+            setGenreBooks(book.getGenre(), booksByGenre.getBooks(book.getGenre()).appended(book.detachedCopy()));
+        }
+    }
+
+    private void removeFromGenre(Book book, String genre) {
+        BookVector books = booksByGenre.getBooks(genre);
+        int index = books.searchOrder(book.getGenreOrder());
+        if (index >= 0) {
+            setGenreBooks(genre, books.removed(index));
+        }
+    }
+
+    // после смены полей книги её копия в жанре заменяется новой (место в порядке жанра то же)
+    private void updateInGenre(Book book) {
+        BookVector books = booksByGenre.getBooks(book.getGenre());
+        int index = books.searchOrder(book.getGenreOrder());
+        if (index >= 0) {
+            setGenreBooks(book.getGenre(), books.replaced(index, book.detachedCopy()));
+        }
+    }
+
+    private void setGenreBooks(String genre, BookVector books) {
+        booksByGenre = booksByGenre.withGenre(genre, books);
+        if (publishHold == 0) {
+            publish();
+        }
+    }
+
+    private void holdPublishing() {
+        publishHold++;
+    }
+
+    private void releasePublishing() {
+        if (--publishHold == 0) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        published.set(booksByGenre);
+        if (autosave != null && unpublishedChanges > 0) {
+            autosave.changed(booksByGenre, unpublishedChanges);
+        }
+        unpublishedChanges = 0;
+    }
+
+    // книги с годом издания от from до to включительно - отрезок порядка по году
+    private Stream<Book> yearRange(int from, int to, int offset, int limit) {
+        int first = byYear.countBefore(book -> book.getDate() > 0 && book.getDate() < from);
+        int end = byYear.countBefore(book -> book.getDate() > 0 && book.getDate() <= to);
+        if (end - first <= offset) {
+            return Stream.empty();
+        }
+        return byYear.page(first + offset, Math.min(limit, end - first - offset));
+    }
+
+    private SortedBookIndex sortedView(SortOrder order) {
+        if (order == null) {
+            throw new IllegalArgumentException("Порядок сортировки не может быть null");
+        }
+        return switch (order) {
+            case TITLE -> byTitle;
+            case AUTHOR -> byAuthor;
+            case YEAR -> byYear;
+        };
+    }
+
+    private static Stream<Book> page(Collection<? extends List<Book>> lists, int offset, int limit) {
+        checkPage(offset, limit);
+
+        ArrayList<List<Book>> parts = new ArrayList<>();
+        int skip = offset;
+        int left = limit;
+        for (List<Book> list : lists) {
+            if (left == 0) {
+                break;
+            }
+            if (skip >= list.size()) {
+                skip -= list.size();
+                continue;
+            }
+            int end = (int) Math.min(list.size(), (long) skip + left);
+            parts.add(list.subList(skip, end));
+            left -= end - skip;
+            skip = 0;
+        }
+        return parts.stream().flatMap(List::stream);
+    }
+
+    private static void checkPage(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset и limit не могут быть отрицательными");
+        }
+    }
+
+    private static String yearInfo(Book book) {
+        return (book.getDate() > 0) ? String.valueOf(book.getDate()) : "неизвестен";
+    }
+
+    // удаление по ссылке: equals у книг сравнивает только название и автора
+    private static <K> void removeFromIndex(Map<K, ArrayList<Book>> index, K key, Book book) {
+        ArrayList<Book> list = index.get(key);
+        if (list == null) {
+            return;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == book) {
+                list.remove(i);
+                break;
+            }
+        }
+        if (list.isEmpty()) {
+            index.remove(key);
         }
     }
 }
\ No newline at end of file
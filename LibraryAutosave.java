@@ -0,0 +1,153 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Фоновое сохранение библиотеки в текстовый файл (формат lib.txt).
+// Библиотека передаёт сюда каждую опубликованную версию (LibrarySnapshot, берётся за O(1)),
+// а файл пишет отдельный поток: раз в интервал, после changeThreshold изменений или по запросу.
+// Поток меню и соединений диска не ждёт. Запросы, пришедшие, пока запись стоит в очереди,
+// сливаются в одну запись самой свежей версии.
+// Файл пишется во временный и заменяет прежний переименованием, поэтому при сбое остаётся
+// одна из версий целиком. Время изменения файла - момент снимка, а не конец записи:
+// журнал с изменениями, сделанными во время записи, остаётся новее файла (см. BookJournal.isNewerThan).
+public class LibraryAutosave implements Closeable {
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final String filePath;
+    private final int changeThreshold;
+    // false - ни интервала, ни порога: файл пишется только по requestSave
+    private final boolean enabled;
+    private final LibraryStats stats;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "library-autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // последняя версия библиотеки, о которой известно
+    private final AtomicReference<Version> latest = new AtomicReference<>();
+    private final AtomicInteger unsavedChanges = new AtomicInteger();
+    // true, пока запись стоит в очереди и ещё не взяла версию
+    private final AtomicBoolean queued = new AtomicBoolean();
+    // записанная последней версия; меняется только в потоке записи
+    private LibrarySnapshot saved;
+
+    // intervalSeconds и changeThreshold: 0 - не сохранять по этому признаку
+    public LibraryAutosave(String filePath, long intervalSeconds, int changeThreshold, LibraryStats stats) {
+        this.filePath = filePath;
+        this.changeThreshold = changeThreshold;
+        this.enabled = intervalSeconds > 0 || changeThreshold > 0;
+        this.stats = (stats == null) ? LibraryStats.DISABLED : stats;
+        if (intervalSeconds > 0) {
+            writer.scheduleWithFixedDelay(this::write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // Вызывается библиотекой в потоке, который её меняет; только запоминает версию
+    void changed(LibrarySnapshot snapshot, int changeCount) {
+        if (!enabled) {
+            return;
+        }
+        latest.set(new Version(snapshot, System.currentTimeMillis()));
+        if (changeThreshold > 0 && unsavedChanges.addAndGet(changeCount) >= changeThreshold) {
+            schedule();
+        }
+    }
+
+    // записать эту версию как можно скорее, не дожидаясь интервала
+    public void requestSave(LibrarySnapshot snapshot) {
+        latest.set(new Version(snapshot, System.currentTimeMillis()));
+        schedule();
+    }
+
+    // Дожидается запрошенных записей и останавливает поток. Если автосохранение включено,
+    // перед этим записывает последнюю версию, если она ещё не записана.
+    // Выключенное автосохранение при закрытии файл не трогает.
+    @Override
+    public void close() {
+        if (enabled) {
+            schedule();
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("Автосохранение не завершилось за " + CLOSE_TIMEOUT_SECONDS + " с");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule() {
+        if (queued.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::write);
+            } catch (RejectedExecutionException e) {
+                // уже остановлено
+                queued.set(false);
+            }
+        }
+    }
+
+    private void write() {
+        queued.set(false);
+        unsavedChanges.set(0);
+        Version version = latest.get();
+        if (version == null || version.snapshot == saved) {
+            return;
+        }
+
+        long start = stats.start();
+        int savedCount = 0;
+        long byteCount = 0;
+        Path target = Path.of(filePath);
+        Path temp = Path.of(filePath + ".tmp");
+        try {
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+                 BufferedWriter out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+                for (BookVector books : version.snapshot.getBooksByGenre()) {
+                    for (Book book : books) {
+                        BookRecordParser.writeRecord(out, book);
+                        out.newLine();
+                        savedCount++;
+                    }
+                }
+                out.flush();
+                stream.getFD().sync();
+            }
+            Files.setLastModifiedTime(temp, FileTime.fromMillis(version.takenAt));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            saved = version.snapshot;
+            byteCount = target.toFile().length();
+        } catch (IOException | RuntimeException e) {
+            // поток записи один на всё время работы: ошибка не должна его останавливать
+            System.out.println("Ошибка автосохранения в " + filePath + ": " + e.getMessage());
+        } finally {
+            stats.record(LibraryStats.Operation.AUTOSAVE, start, savedCount, byteCount);
+        }
+    }
+
+    private static final class Version {
+        private final LibrarySnapshot snapshot;
+        private final long takenAt;
+
+        Version(LibrarySnapshot snapshot, long takenAt) {
+            this.snapshot = snapshot;
+            this.takenAt = takenAt;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+// Замеры основных операций Library на синтетическом каталоге (см. CatalogGenerator).
+// Для каждой операции печатаются пропускная способность, время на операцию,
+// байты, выделенные на операцию в текущем потоке, и число/время сборок мусора.
+// Цифры ориентировочные: это простой цикл в main, а не JMH - без отдельных форков JVM,
+// без контроля JIT (удаление мёртвого кода, профили от предыдущих операций) и с короткой
+// фиксированной разминкой. Сравнивать стоит прогоны на одной машине с одними параметрами;
+// для точных цифр операцию нужно переносить в JMH.
+// Запуск: java -Xmx8g LibraryBenchmark [размеры каталога через запятую] [seed]
+// Например: java -Xmx8g LibraryBenchmark 1000,100000,1000000
+public class LibraryBenchmark {
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+    private static final int MAX_OPERATIONS = 100_000;
+
+    private static final PrintStream out = System.out;
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        String sizes = (args.length > 0) ? args[0] : "1000,100000";
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 42;
+
+        Path directory = Files.createTempDirectory("library-bench");
+        try {
+            for (String size : sizes.split(",")) {
+                run(Integer.parseInt(size.trim()), seed, directory);
+            }
+        } finally {
+            System.setOut(out);
+            for (File file : directory.toFile().listFiles()) {
+                file.delete();
+            }
+            directory.toFile().delete();
+        }
+    }
+
+    private static void run(int bookCount, long seed, Path directory) throws IOException {
+        String catalogFile = directory.resolve("lib-" + bookCount + ".txt").toString();
+        String importFile = directory.resolve("import-" + bookCount + ".txt").toString();
+        String savedFile = directory.resolve("saved-" + bookCount + ".txt").toString();
+        String snapshotFile = directory.resolve("saved-" + bookCount + ".bin").toString();
+        CatalogGenerator.write(catalogFile, bookCount, seed);
+        // половина импортируемых книг уже есть в каталоге
+        CatalogGenerator.write(importFile, bookCount / 2, bookCount, seed);
+
+        out.printf("%n=== Каталог: %d книг (%d КБ) ===%n", bookCount, new File(catalogFile).length() / 1024);
+        out.printf("%-36s %14s %12s %14s %10s%n", "операция", "оп/с", "нс/оп", "байт/оп", "GC (мс)");
+
+        // вывод Library на время замеров отключается
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long heapBefore = usedHeap();
+            Library library = new Library();
+            library.loadBooksFromFile(catalogFile);
+            out.printf("%-36s %14d%n", "память на книгу, байт", (usedHeap() - heapBefore) / Math.max(1, bookCount));
+            List<Book> books = library.queryAllBooks(0, Integer.MAX_VALUE).collect(Collectors.toList());
+            Random random = new Random(seed);
+            int operations = Math.min(MAX_OPERATIONS, bookCount);
+            String[] names = new String[operations];
+            String[] authors = new String[operations];
+            for (int i = 0; i < operations; i++) {
+                Book book = books.get(random.nextInt(books.size()));
+                names[i] = book.getName();
+                authors[i] = book.getAuthor();
+            }
+
+            // файловые операции - пока библиотека совпадает с каталогом
+            measureOnce("saveBooksToFile", bookCount, () -> library.saveBooksToFile(savedFile));
+            measureOnce("saveSnapshot", bookCount, () -> library.saveSnapshot(snapshotFile));
+            measureOnce("loadBooksFromFile", bookCount, () -> new Library().loadBooksFromFile(catalogFile));
+            measureOnce("loadBooksFromFile, паралл.", bookCount,
+                    () -> new Library().loadBooksFromFile(catalogFile, true));
+            measureOnce("loadSnapshot", bookCount, () -> new Library().loadSnapshot(snapshotFile));
+            Library target = new Library();
+            target.loadSnapshot(snapshotFile);
+            measureOnce("importBooksFromFile", bookCount, () -> target.importBooksFromFile(importFile));
+
+            measure("findBookByName", operations, i -> library.findBookByName(names[i]));
+            measure("findBooksByAuthor", operations, i -> library.findBooksByAuthor(authors[i]));
+            measure("findBooksByPrefix", operations,
+                    i -> library.findBooksByPrefix(names[i].substring(0, names[i].length() / 2), 20));
+            measure("findBooksBySubstring", operations,
+                    i -> library.findBooksBySubstring(names[i].substring(names[i].length() / 2), 20));
+            measure("queryBooksByGenre, стр.", operations,
+                    i -> library.queryBooksByGenre("Роман", i % 1000, 20).count());
+            measure("queryAllBooks по названию, стр.", operations,
+                    i -> library.queryAllBooks(Library.SortOrder.TITLE, (int) ((long) i * 7919 % bookCount), 20).count());
+            measure("editBook, смена жанра", operations,
+                    i -> library.editBook(names[i], null, null, "Жанр " + (i % 7), (Integer) null));
+            measure("addBook", operations,
+                    i -> library.addBook(new Book("Новая книга " + i + " " + System.nanoTime(), "Автор", "Роман")));
+            measureOnce("removeBookByName", operations, () -> {
+                for (String name : names) {
+                    library.removeBookByName(name);
+                }
+            });
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    // operations вызовов op(i) за раунд; между раундами набор тот же
+    private static void measure(String name, int operations, IntConsumer op) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < operations; i++) {
+                op.accept(i);
+            }
+        }
+        long[] gc = gcTotals();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            for (int i = 0; i < operations; i++) {
+                op.accept(i);
+            }
+        }
+        report(name, (long) operations * MEASURED_ROUNDS, start, allocated, gc);
+    }
+
+    // для тяжёлых операций: один прогон, результат пересчитывается на записи
+    private static void measureOnce(String name, int records, Runnable op) {
+        long[] gc = gcTotals();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        op.run();
+        report(name + ", на запись", Math.max(1, records), start, allocated, gc);
+    }
+
+    private static void report(String name, long operations, long start, long allocatedBefore, long[] gcBefore) {
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        long[] gc = gcTotals();
+        out.printf("%-36s %14.0f %12.1f %14.1f %5d/%-5d%n", name,
+                operations * 1e9 / elapsed,
+                (double) elapsed / operations,
+                (double) allocated / operations,
+                gc[0] - gcBefore[0], gc[1] - gcBefore[1]);
+    }
+
+    // занятая куча после нескольких полных сборок
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+}
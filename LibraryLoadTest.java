@@ -0,0 +1,202 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Нагрузочный клиент для LibraryServer. Все соединения обслуживает один поток через Selector,
+// поэтому клиент сам не упирается в число потоков даже на тысячах соединений.
+// На каждом соединении держится pipeline запросов без ожидания ответа.
+// Запуск: java LibraryLoadTest [порт] [соединений] [запросов на соединение] [глубина pipeline]
+// Например: java LibraryLoadTest 7070 2000 200 8
+public class LibraryLoadTest {
+    private static final int SAMPLE_SIZE = 1000;
+
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7070;
+        int connectionCount = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+        int requestsPerConnection = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        int pipelineDepth = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+
+        List<String> requests = sampleRequests(port);
+        if (requests.isEmpty()) {
+            System.out.println("Библиотека на сервере пуста, запросов для теста нет.");
+            return;
+        }
+
+        Selector selector = Selector.open();
+        List<Connection> connections = new ArrayList<>(connectionCount);
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        for (int i = 0; i < connectionCount; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            Connection connection = new Connection(channel, requests, requestsPerConnection, pipelineDepth, i);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        }
+        System.out.println("Открыто соединений: " + connectionCount);
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        long startTime = System.nanoTime();
+        for (Connection connection : connections) {
+            connection.fillPipeline();
+        }
+
+        int finished = 0;
+        long errors = 0;
+        while (finished < connectionCount) {
+            selector.select();
+            for (SelectionKey key : selector.selectedKeys()) {
+                Connection connection = (Connection) key.attachment();
+                if (key.isWritable()) {
+                    connection.write();
+                }
+                if (key.isReadable() && connection.read(latencies)) {
+                    errors += connection.errors;
+                    connection.channel.close();
+                    finished++;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        long total = (long) connectionCount * requestsPerConnection;
+        System.out.printf("Запросов: %d, ответов с ошибкой: %d, время: %d мс%n", total, errors, elapsed / 1_000_000);
+        System.out.printf("Пропускная способность: %.0f запросов/с%n", total * 1e9 / elapsed);
+        System.out.printf("Задержка, мкс: p50 %d, p90 %d, p99 %d, макс %d%n",
+                latencies.getPercentile(50) / 1000, latencies.getPercentile(90) / 1000,
+                latencies.getPercentile(99) / 1000, latencies.getMax() / 1000);
+    }
+
+    // запросы строятся по книгам, которые есть на сервере
+    private static List<String> sampleRequests(int port) throws IOException {
+        List<String> requests = new ArrayList<>();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            out.write("list 0 " + SAMPLE_SIZE + "\nquit\n");
+            out.flush();
+            String header = in.readLine();
+            int count = (header != null && header.startsWith("OK ")) ? Integer.parseInt(header.substring(3)) : 0;
+            for (int i = 0; i < count; i++) {
+                String[] fields = in.readLine().split("\t");
+                requests.add("find " + quote(fields[0]));
+                requests.add("find-author " + quote(fields[1]) + " 0 10");
+                requests.add("genre " + quote(fields[2]) + " " + (i % 50) + " 10");
+            }
+        }
+        return requests;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static class Connection {
+        private final SocketChannel channel;
+        private final List<String> requests;
+        private final int requestCount;
+        private final int pipelineDepth;
+        private final Random random;
+        private final ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+        private ByteBuffer output = ByteBuffer.allocate(0);
+        // время отправки запросов, ответ на которые ещё не пришёл
+        private final long[] sentAt;
+        private SelectionKey key;
+        private int sent;
+        private int received;
+        // строк, оставшихся в текущем ответе; -1 - ждём заголовок
+        private int linesLeft = -1;
+        private long errors;
+
+        Connection(SocketChannel channel, List<String> requests, int requestCount, int pipelineDepth, long seed) {
+            this.channel = channel;
+            this.requests = requests;
+            this.requestCount = requestCount;
+            this.pipelineDepth = pipelineDepth;
+            this.random = new Random(seed);
+            this.sentAt = new long[pipelineDepth];
+        }
+
+        void fillPipeline() throws IOException {
+            StringBuilder batch = new StringBuilder();
+            while (sent < requestCount && sent - received < pipelineDepth) {
+                sentAt[sent % pipelineDepth] = System.nanoTime();
+                batch.append(requests.get(random.nextInt(requests.size()))).append('\n');
+                sent++;
+            }
+            if (batch.length() == 0) {
+                return;
+            }
+            byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer merged = ByteBuffer.allocate(output.remaining() + bytes.length);
+            merged.put(output).put(bytes).flip();
+            output = merged;
+            write();
+        }
+
+        void write() throws IOException {
+            channel.write(output);
+            key.interestOps(output.hasRemaining()
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        // true, когда получены ответы на все запросы соединения
+        boolean read(LatencyHistogram latencies) throws IOException {
+            if (channel.read(input) < 0) {
+                throw new IOException("Сервер закрыл соединение");
+            }
+            input.flip();
+            int lineStart = input.position();
+            for (int i = input.position(); i < input.limit(); i++) {
+                if (input.get(i) != '\n') {
+                    continue;
+                }
+                if (linesLeft < 0) {
+                    // заголовок: "OK <n>" или "ERR ..."
+                    if (input.get(lineStart) == 'O') {
+                        linesLeft = parseCount(lineStart + 3, i);
+                    } else {
+                        errors++;
+                        linesLeft = 0;
+                    }
+                } else {
+                    linesLeft--;
+                }
+                if (linesLeft == 0) {
+                    latencies.record(System.nanoTime() - sentAt[received % pipelineDepth]);
+                    received++;
+                    linesLeft = -1;
+                }
+                lineStart = i + 1;
+            }
+            input.position(lineStart);
+            input.compact();
+
+            fillPipeline();
+            return received == requestCount;
+        }
+
+        private int parseCount(int from, int to) {
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                value = value * 10 + (input.get(i) - '0');
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Сетевой доступ к библиотеке для нескольких терминалов: текстовый протокол на localhost.
+// Запрос - одна строка в формате пакетного режима (см. BatchRunner):
+//   find <название>
+//   find-author <автор> [offset limit]
+//   genre <жанр> [offset limit]
+//   list [offset limit]
+//   sorted <title|author|year> [offset limit]
+//   fuzzy <название или автор, до 256 символов> [число опечаток]
+//   add <название> <автор> <жанр> [год]
+//   edit <название> [name=...] [author=...] [genre=...] [year=...]
+//   remove <название>
+//   merge-genre <жанр> <жанр, в который перенести книги>
+//   import <файл, папка или шаблон на сервере>
+//   count
+//   quit
+// Ответ: "OK <n>" и n строк (книги в виде название<TAB>автор<TAB>жанр<TAB>год) или "ERR <сообщение>".
+// На count - "OK 1" и строка с числом книг. На изменения (add, edit, remove, merge-genre, import) -
+// одна строка "OK <число добавленных, изменённых или удалённых книг>".
+// Изменения выполняются без вывода в консоль сервера.
+// Клиент может слать запросы не дожидаясь ответов: ответы идут в том же порядке
+// и сбрасываются в сокет, только когда прочитаны все уже пришедшие запросы.
+public class LibraryServer implements Closeable {
+    private static final int BACKLOG = 4096;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // больше опечаток запрос совпадает почти со всем словарём, а обход становится дорогим
+    private static final int MAX_TYPOS = 3;
+    // стек потока соединения; обычным потокам на тысячи соединений 1 МБ по умолчанию не нужен
+    private static final long CONNECTION_STACK_SIZE = 256 * 1024;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final ConcurrentLibrary library;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private Thread acceptor;
+
+    public LibraryServer(ConcurrentLibrary library, int port) throws IOException {
+        this.library = library;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        acceptor = new Thread(this::acceptConnections, "library-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdownNow();
+        // изменения, начатые до закрытия, должны успеть попасть в журнал
+        try {
+            connections.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                openSockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.out.println("Ошибка при подключении клиента: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().equals("quit")) {
+                    break;
+                }
+                handle(line, out);
+                // пока в буфере есть следующие запросы, ответы копятся и уходят одним пакетом
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // клиент отключился
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    private void handle(String line, Writer out) throws IOException {
+        try {
+            List<String> tokens = BatchRunner.tokenize(line.trim());
+            if (tokens.isEmpty()) {
+                throw new IllegalArgumentException("Пустой запрос");
+            }
+            switch (tokens.get(0)) {
+                case "find" -> {
+                    BatchRunner.requireArguments(tokens, 2, 2);
+                    Book book = library.findBookByName(tokens.get(1));
+                    if (book == null) {
+                        throw new IllegalArgumentException("Книга \"" + tokens.get(1) + "\" не найдена.");
+                    }
+                    writeBooks(out, Stream.of(book));
+                }
+                case "find-author" -> {
+                    BatchRunner.requireArguments(tokens, 2, 4);
+                    writeBooks(out, library.queryBooksByAuthor(tokens.get(1), offset(tokens, 2), limit(tokens, 3)));
+                }
+                case "genre" -> {
+                    BatchRunner.requireArguments(tokens, 2, 4);
+                    writeBooks(out, library.queryBooksByGenre(tokens.get(1), offset(tokens, 2), limit(tokens, 3)));
+                }
+                case "list" -> {
+                    BatchRunner.requireArguments(tokens, 1, 3);
+                    writeBooks(out, library.queryAllBooks(offset(tokens, 1), limit(tokens, 2)));
+                }
+                case "sorted" -> {
+                    BatchRunner.requireArguments(tokens, 2, 4);
+                    writeBooks(out, library.queryAllBooks(sortOrder(tokens.get(1)), offset(tokens, 2), limit(tokens, 3)));
+                }
+                case "fuzzy" -> {
+                    BatchRunner.requireArguments(tokens, 2, 3);
+                    // строка от клиента не ограничена, а поиск по длинному запросу дорог
+                    if (tokens.get(1).length() > Library.MAX_FUZZY_QUERY_LENGTH) {
+                        throw new IllegalArgumentException("Запрос длиннее " + Library.MAX_FUZZY_QUERY_LENGTH + " символов");
+                    }
+                    int distance = (tokens.size() > 2) ? Math.min(parseCount(tokens.get(2)), MAX_TYPOS)
+                            : Library.typoAllowance(tokens.get(1));
+                    writeBooks(out, library.findBooksFuzzy(tokens.get(1), distance, DEFAULT_PAGE_SIZE).stream());
+                }
+                case "add" -> {
+                    library.addBook(BatchRunner.newBook(tokens));
+                    out.write("OK 1\n");
+                }
+                case "edit" -> {
+                    BatchRunner.editBook(library, tokens);
+                    out.write("OK 1\n");
+                }
+                case "remove" -> {
+                    BatchRunner.requireArguments(tokens, 2, 2);
+                    // поиск и удаление одним вызовом, под одной блокировкой
+                    int removedCount = library.removeBooksByNameQuietly(tokens.get(1));
+                    if (removedCount == 0) {
+                        throw new IllegalArgumentException("Книга \"" + tokens.get(1) + "\" не найдена.");
+                    }
+                    out.write("OK " + removedCount + "\n");
+                }
+                case "merge-genre" -> {
+                    BatchRunner.requireArguments(tokens, 3, 3);
+                    out.write("OK " + library.mergeGenre(tokens.get(1), tokens.get(2)) + "\n");
+                }
+                case "import" -> {
+                    BatchRunner.requireArguments(tokens, 2, 2);
+                    out.write("OK " + library.importBooksQuietly(tokens.get(1)) + "\n");
+                }
+                case "count" -> out.write("OK 1\n" + library.countBooks() + "\n");
+                default -> throw new IllegalArgumentException("Неизвестная команда: " + tokens.get(0));
+            }
+        } catch (RuntimeException e) {
+            out.write("ERR " + String.valueOf(e.getMessage()).replace('\n', ' ') + "\n");
+        }
+    }
+
+    private static void writeBooks(Writer out, Stream<Book> books) throws IOException {
+        List<Book> list = books.collect(Collectors.toList());
+        out.write("OK " + list.size() + "\n");
+        for (Book book : list) {
+            out.write(book.getName());
+            out.write('\t');
+            out.write(book.getAuthor());
+            out.write('\t');
+            out.write(book.getGenre());
+            out.write('\t');
+            out.write(Integer.toString(book.getDate()));
+            out.write('\n');
+        }
+    }
+
+    private static Library.SortOrder sortOrder(String value) {
+        return switch (value) {
+            case "title" -> Library.SortOrder.TITLE;
+            case "author" -> Library.SortOrder.AUTHOR;
+            case "year" -> Library.SortOrder.YEAR;
+            default -> throw new IllegalArgumentException("Неизвестный порядок: " + value + " (title, author или year)");
+        };
+    }
+
+    private static int offset(List<String> tokens, int index) {
+        return (tokens.size() > index) ? parseCount(tokens.get(index)) : 0;
+    }
+
+    private static int limit(List<String> tokens, int index) {
+        return (tokens.size() > index) ? Math.min(parseCount(tokens.get(index)), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+    }
+
+    private static int parseCount(String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count < 0) {
+                throw new IllegalArgumentException("Число не может быть отрицательным: " + value);
+            }
+            return count;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное число: " + value);
+        }
+    }
+
+    // Java 21+: по виртуальному потоку на соединение. На более старых JVM
+    // виртуальных потоков нет, и соединения обслуживают обычные потоки с уменьшенным стеком.
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(null, r, "library-server-connection", CONNECTION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
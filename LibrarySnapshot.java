@@ -0,0 +1,52 @@
+import java.util.List;
+
+// Книги библиотеки по жанрам на один момент времени. Снимок неизменяем: библиотека
+// на каждое изменение собирает новую версию из PersistentMap и BookVector, деля
+// с прежней всё, что не менялось, поэтому снимок берётся за O(1) и читается без блокировок,
+// сколько бы ни длилось чтение. Книги снимка - копии, отвязанные от библиотеки и доступные
+// только для чтения: их сеттеры бросают UnsupportedOperationException (править - через Library.editBook).
+public final class LibrarySnapshot {
+    public static final LibrarySnapshot EMPTY = new LibrarySnapshot(PersistentMap.empty(), 0);
+
+    private final PersistentMap<String, BookVector> genres;
+    private final int bookCount;
+
+    private LibrarySnapshot(PersistentMap<String, BookVector> genres, int bookCount) {
+        this.genres = genres;
+        this.bookCount = bookCount;
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    public boolean isEmpty() {
+        return bookCount == 0;
+    }
+
+    public boolean containsGenre(String genre) {
+        return genres.containsKey(genre);
+    }
+
+    public List<String> getGenres() {
+        return genres.keys();
+    }
+
+    // книги жанра; пустой список, если жанра нет
+    public BookVector getBooks(String genre) {
+        BookVector books = genres.get(genre);
+        return (books == null) ? BookVector.EMPTY : books;
+    }
+
+    // списки книг всех жанров в порядке getGenres()
+    public List<BookVector> getBooksByGenre() {
+        return genres.values();
+    }
+
+    // новая версия, в которой у жанра такие книги; пустой список убирает жанр
+    LibrarySnapshot withGenre(String genre, BookVector books) {
+        int oldCount = getBooks(genre).size();
+        PersistentMap<String, BookVector> newGenres = books.isEmpty() ? genres.remove(genre) : genres.put(genre, books);
+        return new LibrarySnapshot(newGenres, bookCount - oldCount + books.size());
+    }
+}
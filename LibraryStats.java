@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счётчики вызовов и гистограммы задержек операций библиотеки.
+// Выключенная статистика (DISABLED) не вызывает даже System.nanoTime():
+// start() возвращает 0, а record() сразу выходит.
+public class LibraryStats {
+    public static final LibraryStats DISABLED = new LibraryStats(false);
+
+    public enum Operation {
+        ADD_BOOK("addBook"),
+        EDIT_BOOK("editBook"),
+        REMOVE_BOOK("removeBookByName"),
+        FIND_BY_NAME("findBookByName"),
+        FIND_BY_AUTHOR("findBooksByAuthor"),
+        FIND_BY_PREFIX("findBooksByPrefix"),
+        FIND_BY_SUBSTRING("findBooksBySubstring"),
+        FIND_BY_YEAR("findBooksByYearRange"),
+        FIND_FUZZY("findBooksFuzzy"),
+        // у ленивых выборок замеряется только построение страницы, без чтения потока
+        QUERY("query*"),
+        PRINT_GENRE("printBooksByGenre"),
+        PRINT_ALL("printAllBooks"),
+        LOAD_TEXT("loadBooksFromFile"),
+        SAVE_TEXT("saveBooksToFile"),
+        LOAD_SNAPSHOT("loadSnapshot"),
+        SAVE_SNAPSHOT("saveSnapshot"),
+        IMPORT("importBooksFromFile"),
+        APPLY_BATCH("applyBatch"),
+        LOAD_SEGMENTS("loadSegments"),
+        SAVE_SEGMENTS("saveSegments"),
+        AUTOSAVE("autosave");
+
+        private final String title;
+
+        Operation(String title) {
+            this.title = title;
+        }
+    }
+
+    private final boolean enabled;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] records = new LongAdder[Operation.values().length];
+    private final LongAdder[] bytes = new LongAdder[Operation.values().length];
+    private ScheduledExecutorService dumper;
+
+    public LibraryStats() {
+        this(true);
+    }
+
+    private LibraryStats(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            records[i] = new LongAdder();
+            bytes[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void record(Operation operation, long start) {
+        if (enabled) {
+            latencies[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    // для файловых операций: сколько записей и байт обработано
+    public void record(Operation operation, long start, long recordCount, long byteCount) {
+        if (enabled) {
+            latencies[operation.ordinal()].record(System.nanoTime() - start);
+            records[operation.ordinal()].add(recordCount);
+            bytes[operation.ordinal()].add(byteCount);
+        }
+    }
+
+    public String report() {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        if (!enabled) {
+            writer.println("Статистика выключена.");
+            return text.toString();
+        }
+
+        writer.printf("%-22s %9s %10s %10s %10s %10s %10s %10s %12s%n",
+                "операция", "вызовов", "среднее", "p50", "p90", "p99", "макс", "записей", "байт");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            writer.printf("%-22s %9d %10s %10s %10s %10s %10s %10d %12d%n",
+                    operation.title,
+                    histogram.getCount(),
+                    formatNanos((long) histogram.getMean()),
+                    formatNanos(histogram.getPercentile(50)),
+                    formatNanos(histogram.getPercentile(90)),
+                    formatNanos(histogram.getPercentile(99)),
+                    formatNanos(histogram.getMax()),
+                    records[operation.ordinal()].sum(),
+                    bytes[operation.ordinal()].sum());
+        }
+        writer.flush();
+        return text.toString();
+    }
+
+    // Раз в intervalSeconds дописывает отчёт в файл (целиком заменяя его).
+    public void startPeriodicDump(String filePath, long intervalSeconds) {
+        if (!enabled || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stats-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(filePath), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stopPeriodicDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    public void dump(String filePath) {
+        Path target = Path.of(filePath);
+        Path temp = Path.of(filePath + ".tmp");
+        try {
+            Files.writeString(temp, "Статистика на " + LocalDateTime.now() + "\n" + report(), StandardCharsets.UTF_8);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Ошибка при записи статистики: " + e.getMessage());
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + " нс";
+        }
+        if (nanos < 10_000_000) {
+            return (nanos / 1_000) + " мкс";
+        }
+        return (nanos / 1_000_000) + " мс";
+    }
+}
@@ -1,25 +1,127 @@
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 
 public class Main {
-    private static final Library library = new Library();
+    // в режиме сервера библиотеку используют и меню, и потоки соединений
+    private static Library library = new Library();
+    // библиотека хранится по жанрам в SEGMENTS_DIR, журнал не ведётся
+    private static boolean segmented;
+    // фоновая запись lib.txt; создаётся после загрузки библиотеки
+    private static LibraryAutosave autosave;
+    // библиотека не загрузилась целиком: при выходе файлы не перезаписываются
+    private static boolean loadFailed;
     private static final InputHandler inputHandler = new InputHandler();
     private static final String LIBRARY_FILE = "files/lib.txt";
+    private static final String IMPORT_FILE = "files/books.txt";
+    private static final String SNAPSHOT_FILE = "files/lib.bin";
+    private static final String JOURNAL_FILE = "files/lib.journal";
+    private static final String SEGMENTS_DIR = "files/segments";
+    private static final long JOURNAL_COMPACTION_THRESHOLD = 4L * 1024 * 1024;
+    private static final int SEARCH_LIMIT = 50;
+    private static final int SUGGESTION_LIMIT = 5;
+    private static final int PAGE_SIZE = 20;
+    private static final long STATS_DUMP_INTERVAL_SECONDS = 60;
+    private static final LibraryStats stats = new LibraryStats();
+    private static final BookJournal journal =
+            new BookJournal(SNAPSHOT_FILE, JOURNAL_FILE, JOURNAL_COMPACTION_THRESHOLD);
 
     public static void main(String[] args) {
+        // --parallel: параллельная загрузка большого файла библиотеки
+        boolean parallelLoad = Arrays.asList(args).contains("--parallel");
+        // --lazy: не загружать lib.txt целиком при запуске (см. LazyLibrary)
+        boolean lazyLoad = Arrays.asList(args).contains("--lazy");
+        // --segments: хранить библиотеку по жанрам в files/segments (см. GenreSegmentStore)
+        segmented = Arrays.asList(args).contains("--segments");
+        // --stats-dump=<файл>: раз в минуту статистика операций записывается в файл
+        // --batch=<файл>: выполнить команды из файла без меню ("-" - из стандартного ввода)
+        // --server=<порт>: вместе с меню обслуживать терминалы по сети (см. LibraryServer)
+        // --autosave=<секунды>, --autosave-changes=<число>: в фоне сохранять lib.txt
+        // раз в столько секунд и/или после стольких изменений (см. LibraryAutosave)
+        String batchScript = null;
+        Integer serverPort = null;
+        long autosaveSeconds = 0;
+        int autosaveChanges = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--stats-dump=")) {
+                stats.startPeriodicDump(arg.substring("--stats-dump=".length()), STATS_DUMP_INTERVAL_SECONDS);
+            } else if (arg.startsWith("--batch=")) {
+                batchScript = arg.substring("--batch=".length());
+            } else if (arg.startsWith("--server=")) {
+                serverPort = Integer.parseInt(arg.substring("--server=".length()));
+            } else if (arg.startsWith("--autosave=")) {
+                autosaveSeconds = Long.parseLong(arg.substring("--autosave=".length()));
+            } else if (arg.startsWith("--autosave-changes=")) {
+                autosaveChanges = Integer.parseInt(arg.substring("--autosave-changes=".length()));
+            }
+        }
+        if (serverPort != null) {
+            library = new ConcurrentLibrary();
+            lazyLoad = false;
+        }
+        library.setStats(stats);
+
         try {
-            library.loadBooksFromFile(LIBRARY_FILE);
+            loadLibrary(parallelLoad, lazyLoad);
         } catch (Exception e) {
             System.out.println("Предупреждение: " + e.getMessage());
-            System.out.println("Библиотека будет пустой.");
+            System.out.println("Библиотека может быть неполной, изменения не будут сохранены при выходе.");
+            loadFailed = true;
+            autosaveSeconds = 0;
+            autosaveChanges = 0;
         }
+        // загрузка могла заменить объект библиотеки (ленивая, сегментная)
+        autosave = new LibraryAutosave(LIBRARY_FILE, autosaveSeconds, autosaveChanges, stats);
+        library.setAutosave(autosave);
 
-        runMainMenu();
+        LibraryServer server = (serverPort != null) ? startServer(serverPort) : null;
+        if (batchScript != null) {
+            runBatch(batchScript);
+        } else {
+            runMainMenu();
+        }
+        stopServer(server);
+        saveLibrary();
+        stats.stopPeriodicDump();
         inputHandler.close();
     }
 
+    // снимок с журналом читается быстрее, но если lib.txt правили позже, берётся он
+    private static void loadLibrary(boolean parallelLoad, boolean lazyLoad) throws IOException {
+        if (segmented) {
+            loadSegmentedLibrary(parallelLoad);
+        } else if (journal.isNewerThan(LIBRARY_FILE)) {
+            journal.open(library);
+        } else if (lazyLoad) {
+            // журнал не ведётся: изменения сохраняются снимком при выходе
+            library = new LazyLibrary(LIBRARY_FILE);
+            library.setStats(stats);
+        } else {
+            library.loadBooksFromFile(LIBRARY_FILE, parallelLoad);
+            journal.reset(library);
+        }
+    }
+
+    // журнал не ведётся: при выходе перезаписываются только изменённые жанры.
+    // Пока сегментов нет, библиотека читается из lib.txt и при выходе сохраняется в них целиком.
+    // lib.txt новее сегментов, если после последнего сохранения в них успело пройти автосохранение
+    // (программа завершилась без сохранения) или был экспорт: тогда тоже берётся он.
+    private static void loadSegmentedLibrary(boolean parallelLoad) throws IOException {
+        GenreSegmentStore store = GenreSegmentStore.open(SEGMENTS_DIR);
+        if (!store.exists() || new File(LIBRARY_FILE).lastModified() > store.lastModified()) {
+            library.loadBooksFromFile(LIBRARY_FILE, parallelLoad);
+        } else if (library instanceof ConcurrentLibrary) {
+            library.loadSegments(SEGMENTS_DIR);
+        } else {
+            library = new SegmentedLibrary(SEGMENTS_DIR);
+            library.setStats(stats);
+        }
+    }
+
     private static void runMainMenu() {
         String[] mainMenuOptions = {
                 "Добавить книгу",
@@ -27,7 +129,9 @@ public class Main {
                 "Найти книгу",
                 "Вывести список книг",
                 "Редактировать книгу",
-                "Импортировать книги из books.txt",
+                "Импортировать книги",
+                "Экспортировать книги в lib.txt",
+                "Статистика",
                 "Помощь",
                 "Сохранить и выйти"
         };
@@ -45,8 +149,10 @@ public class Main {
                     case 4 -> listBooks();
                     case 5 -> editBook();
                     case 6 -> importBooks();
-                    case 7 -> showHelp();
-                    case 8 -> exitRequested = true;
+                    case 7 -> exportBooks();
+                    case 8 -> showStats();
+                    case 9 -> showHelp();
+                    case 10 -> exitRequested = true;
                 }
             } catch (Exception e) {
                 System.out.println("Произошла ошибка: " + e.getMessage());
@@ -54,8 +160,68 @@ public class Main {
             }
         }
 
+    }
+
+    private static LibraryServer startServer(int port) {
+        try {
+            LibraryServer server = new LibraryServer((ConcurrentLibrary) library, port);
+            server.start();
+            System.out.println("Сервер библиотеки слушает порт " + server.getPort());
+            return server;
+        } catch (IOException e) {
+            System.out.println("Не удалось запустить сервер: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void stopServer(LibraryServer server) {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.out.println("Ошибка при остановке сервера: " + e.getMessage());
+        }
+    }
+
+    private static void runBatch(String scriptPath) {
         try {
-            library.saveBooksToFile(LIBRARY_FILE);
+            new BatchRunner(library, journal.isOpen() ? journal : null).run(scriptPath);
+        } catch (IOException e) {
+            System.out.println("Ошибка при чтении пакета команд: " + e.getMessage());
+        }
+    }
+
+    private static void saveLibrary() {
+        // Ленивая библиотека хранится только в lib.txt: если её меняли, переписывается он.
+        // Снимок lib.bin оказался бы новее lib.txt, и следующий запуск читал бы снимок, а не ленивый каталог
+        boolean lazy = library instanceof LazyLibrary;
+        if (lazy && !loadFailed && ((LazyLibrary) library).isChanged()) {
+            autosave.requestSave(library.snapshot());
+        }
+        // сначала дописываем lib.txt: сегменты и снимок журнала должны оказаться новее него
+        autosave.close();
+        if (loadFailed) {
+            // иначе неполная библиотека заменила бы снимок, сегменты или журнал
+            System.out.println("Библиотека не сохранена: при запуске она загрузилась с ошибкой.");
+            return;
+        }
+        if (segmented) {
+            try {
+                library.saveSegments(SEGMENTS_DIR);
+                System.out.println("Библиотека сохранена. До свидания!");
+            } catch (Exception e) {
+                System.out.println("Ошибка при сохранении: " + e.getMessage());
+            }
+            return;
+        }
+        try {
+            // все изменения уже в журнале; если журнал не открылся при запуске, пишем снимок целиком
+            if (!journal.isOpen() && !lazy) {
+                journal.reset(library);
+            }
+            journal.close();
             System.out.println("Библиотека сохранена. До свидания!");
         } catch (Exception e) {
             System.out.println("Ошибка при сохранении: " + e.getMessage());
@@ -91,6 +257,7 @@ public class Main {
         Book book = library.findBookByName(title);
         if (book == null) {
             System.out.println("Книга не найдена в библиотеке.");
+            suggestBooks(title);
         } else {
             library.removeBookByName(book.getName());
             System.out.println("Книга удалена.");
@@ -99,7 +266,8 @@ public class Main {
 
     private static void findBook() {
         System.out.println("\n--- ПОИСК КНИГИ ---");
-        String[] searchOptions = {"По названию", "По автору"};
+        String[] searchOptions = {"По названию", "По автору", "По началу названия или автора",
+                "По части названия или автора"};
         int searchType = inputHandler.readMenuChoice(searchOptions);
 
         switch (searchType) {
@@ -111,26 +279,120 @@ public class Main {
                     book.printInfo();
                 } else {
                     System.out.println("Книга не найдена.");
+                    suggestBooks(name);
                 }
             }
             case 2 -> {
                 String author = inputHandler.readNonEmptyString("Введите автора: ");
                 library.findBooksByAuthor(author);
             }
+            case 3 -> {
+                String prefix = inputHandler.readNonEmptyString("Введите начало названия или автора: ");
+                printSearchResults(library.findBooksByPrefix(prefix, SEARCH_LIMIT));
+            }
+            case 4 -> {
+                String part = inputHandler.readNonEmptyString("Введите часть названия или автора: ");
+                printSearchResults(library.findBooksBySubstring(part, SEARCH_LIMIT));
+            }
+        }
+    }
+
+    private static void suggestBooks(String name) {
+        if (name.trim().length() > Library.MAX_FUZZY_QUERY_LENGTH) {
+            return;
+        }
+        List<Book> similar = library.findBooksFuzzy(name, Library.typoAllowance(name), SUGGESTION_LIMIT);
+        if (!similar.isEmpty()) {
+            System.out.println("Возможно, вы имели в виду:");
+            for (Book book : similar) {
+                System.out.printf(" - \"%s\" (%s)\n", book.getName(), book.getAuthor());
+            }
+        }
+    }
+
+    private static void printSearchResults(List<Book> books) {
+        if (books.isEmpty()) {
+            System.out.println("Книги не найдены.");
+            return;
+        }
+        for (Book book : books) {
+            book.printInfo();
+        }
+        if (books.size() == SEARCH_LIMIT) {
+            System.out.println("Показаны первые " + SEARCH_LIMIT + " книг, уточните запрос.");
         }
     }
 
     private static void listBooks() {
         System.out.println("\n--- СПИСОК КНИГ ---");
-        String[] listOptions = {"Все книги", "По жанру"};
+        String[] listOptions = {"Все книги по жанрам", "Все книги по названию", "Все книги по автору",
+                "Все книги по году издания", "По жанру", "По годам издания", "С неизвестным годом"};
         int listType = inputHandler.readMenuChoice(listOptions);
 
         switch (listType) {
             case 1 -> library.printAllBooks();
-            case 2 -> {
+            case 2 -> printAllByPages(Library.SortOrder.TITLE);
+            case 3 -> printAllByPages(Library.SortOrder.AUTHOR);
+            case 4 -> printAllByPages(Library.SortOrder.YEAR);
+            case 5 -> {
                 String genre = inputHandler.readNonEmptyString("Введите жанр: ");
-                library.printBooksByGenre(genre);
+                printGenreByPages(genre);
+            }
+            case 6 -> {
+                Integer from = inputHandler.readYear("С какого года");
+                Integer to = inputHandler.readYear("По какой год");
+                printBookList(library.findBooksByYearRange(from != null ? from : 1,
+                        to != null ? to : LocalDate.now().getYear()));
             }
+            case 7 -> printBookList(library.findBooksWithoutYear());
+        }
+    }
+
+    private static void printAllByPages(Library.SortOrder order) {
+        int offset = 0;
+        while (true) {
+            library.printAllBooks(order, offset, PAGE_SIZE);
+            offset += PAGE_SIZE;
+            if (library.queryAllBooks(order, offset, 1).findAny().isEmpty()) {
+                return;
+            }
+            String answer = inputHandler.readString("Показать ещё " + PAGE_SIZE + "? (да/нет): ");
+            if (!answer.equalsIgnoreCase("да")) {
+                return;
+            }
+        }
+    }
+
+    private static void printGenreByPages(String genre) {
+        if (library.queryBooksByGenre(genre, 0, 1).findAny().isEmpty()) {
+            List<String> similar = library.findGenresFuzzy(genre, Library.typoAllowance(genre));
+            if (!similar.isEmpty()) {
+                System.out.println("Жанр \"" + genre + "\" не найден. Похожие жанры: " + String.join(", ", similar));
+                return;
+            }
+        }
+        int offset = 0;
+        while (true) {
+            library.printBooksByGenre(genre, offset, PAGE_SIZE);
+            offset += PAGE_SIZE;
+            if (library.queryBooksByGenre(genre, offset, 1).findAny().isEmpty()) {
+                return;
+            }
+            String answer = inputHandler.readString("Показать ещё " + PAGE_SIZE + "? (да/нет): ");
+            if (!answer.equalsIgnoreCase("да")) {
+                return;
+            }
+        }
+    }
+
+    private static void printBookList(List<Book> books) {
+        if (books.isEmpty()) {
+            System.out.println("Книги не найдены.");
+            return;
+        }
+        for (Book book : books) {
+            String dateInfo = (book.getDate() > 0) ? String.valueOf(book.getDate()) : "неизвестен";
+            System.out.printf(" - \"%s\" (%s, %s, %s)\n", book.getName(), book.getAuthor(), book.getGenre(), dateInfo);
         }
     }
 
@@ -140,6 +402,7 @@ public class Main {
 
         if (library.findBookByName(titleToEdit) == null) {
             System.out.println("Книга не найдена в библиотеке.");
+            suggestBooks(titleToEdit);
             return;
         }
 
@@ -164,14 +427,29 @@ public class Main {
     private static void importBooks() {
         System.out.println("\n--- ИМПОРТ КНИГ ---");
         try {
-            library.importBooksFromFile("files/books.txt");
-            library.saveBooksToFile(LIBRARY_FILE);
-            System.out.println("Книги импортированы и сохранены!");
+            String source = inputHandler.readString("Файл, папка или шаблон вида папка/*.txt (пусто - " +
+                    IMPORT_FILE + "): ");
+            BatchRunner.importBooks(library, source.isEmpty() ? IMPORT_FILE : source);
+            System.out.println("Книги импортированы!");
         } catch (Exception e) {
             System.out.println("Ошибка при импорте: " + e.getMessage());
         }
     }
 
+    private static void exportBooks() {
+        System.out.println("\n--- ЭКСПОРТ КНИГ ---");
+        // файл пишется в фоне по снимку библиотеки, меню не ждёт записи
+        LibrarySnapshot snapshot = library.snapshot();
+        autosave.requestSave(snapshot);
+        System.out.println("Экспорт " + snapshot.getBookCount() + " книг в " + LIBRARY_FILE + " выполняется в фоне.");
+    }
+
+    private static void showStats() {
+        System.out.println("\n--- СТАТИСТИКА ---");
+        System.out.print(stats.report());
+        System.out.println(library.getQueryCache().describe());
+    }
+
     private static void showHelp() {
         System.out.println("\n--- ПОМОЩЬ ---");
         try (BufferedReader reader = new BufferedReader(new FileReader("files/help.txt"))) {
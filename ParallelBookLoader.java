@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Параллельный разбор файла библиотеки: файл читается целиком в буфер в куче
+// (BookRecordParser.readFile), режется на куски по границам строк, куски разбираются в ForkJoinPool.
+// Результат - книги в том же порядке, что и в файле.
+public class ParallelBookLoader {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    // первая ошибка формата прерывает разбор (импорт: файл берётся целиком или не берётся)
+    public static List<Book> parseFile(String filePath) throws IOException {
+        return parse(filePath, false).getBooks();
+    }
+
+    // строки с ошибками пропускаются (загрузка lib.txt, как и последовательная)
+    public static ParsedFile parseFileSkippingErrors(String filePath) throws IOException {
+        return parse(filePath, true);
+    }
+
+    private static ParsedFile parse(String filePath, boolean skipErrors) throws IOException {
+        ByteBuffer buffer = BookRecordParser.readFile(filePath);
+        int size = buffer.limit();
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, size / (parallelism * 4 + 1));
+
+        List<Chunk> chunks = ForkJoinPool.commonPool().invoke(new ChunkTask(buffer, 0, size, chunkSize, skipErrors));
+
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.books.size();
+        }
+        // номера строк внутри куска считаются с единицы и сдвигаются на строки предыдущих кусков
+        ArrayList<Book> books = new ArrayList<>(total);
+        int[] lines = new int[total];
+        ArrayList<BookRecordParser.ParseException> skipped = new ArrayList<>();
+        int lineShift = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.books.size(); i++) {
+                lines[books.size()] = chunk.lines[i] + lineShift;
+                books.add(chunk.books.get(i));
+            }
+            for (BookRecordParser.ParseException error : chunk.skipped) {
+                skipped.add(error.shiftLines(lineShift));
+            }
+            lineShift += chunk.lineBreaks;
+        }
+        return new ParsedFile(books, lines, skipped);
+    }
+
+    // Несколько файлов разбираются одновременно, по задаче на файл (большие файлы
+    // дополнительно делятся на куски). Книги каждого файла возвращаются в порядке
+    // списка files, как бы ни были распределены задачи по потокам.
+    public static List<List<Book>> parseFiles(List<Path> files) {
+        try {
+            return ForkJoinPool.commonPool().invoke(new FilesTask(files));
+        } catch (RuntimeException e) {
+            // исключение из другого потока ForkJoinPool отдаёт обёрнутым в копию того же типа
+            Throwable cause = e.getCause();
+            throw (cause != null && cause.getClass() == e.getClass()) ? (RuntimeException) cause : e;
+        }
+    }
+
+    private static class FilesTask extends RecursiveTask<List<List<Book>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+
+        FilesTask(List<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        protected List<List<Book>> compute() {
+            if (files.size() > 1) {
+                int middle = files.size() / 2;
+                FilesTask left = new FilesTask(files.subList(0, middle));
+                FilesTask right = new FilesTask(files.subList(middle, files.size()));
+                left.fork();
+                List<List<Book>> rightResult = right.compute();
+                List<List<Book>> result = left.join();
+                result.addAll(rightResult);
+                return result;
+            }
+
+            List<List<Book>> result = new ArrayList<>();
+            for (Path file : files) {
+                try {
+                    result.add(parseFile(file.toString()));
+                } catch (IOException e) {
+                    throw new RuntimeException("Ошибка при чтении файла " + file + ": " + e.getMessage(), e);
+                } catch (BookRecordParser.ParseException e) {
+                    throw new RuntimeException("Ошибка формата данных в файле " + file + ": " + e.getMessage(), e);
+                }
+            }
+            return result;
+        }
+    }
+
+    // Разобранный файл: книги в порядке файла, номер строки каждой книги
+    // и пропущенные строки с причиной
+    public static final class ParsedFile {
+        private final List<Book> books;
+        private final int[] lines;
+        private final List<BookRecordParser.ParseException> skipped;
+
+        ParsedFile(List<Book> books, int[] lines, List<BookRecordParser.ParseException> skipped) {
+            this.books = books;
+            this.lines = lines;
+            this.skipped = skipped;
+        }
+
+        public List<Book> getBooks() {
+            return books;
+        }
+
+        // номер строки файла, в которой записана index-я книга
+        public int getLine(int index) {
+            return lines[index];
+        }
+
+        public List<BookRecordParser.ParseException> getSkipped() {
+            return skipped;
+        }
+    }
+
+    private static final class Chunk {
+        private final ArrayList<Book> books = new ArrayList<>();
+        private int[] lines = new int[16];
+        private final ArrayList<BookRecordParser.ParseException> skipped = new ArrayList<>();
+        private int lineBreaks;
+
+        void add(Book book, int line) {
+            if (books.size() == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[books.size()] = line;
+            books.add(book);
+        }
+    }
+
+    private static class ChunkTask extends RecursiveTask<List<Chunk>> {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+        private final boolean skipErrors;
+
+        ChunkTask(ByteBuffer buffer, int start, int end, int chunkSize, boolean skipErrors) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.skipErrors = skipErrors;
+        }
+
+        @Override
+        protected List<Chunk> compute() {
+            if (end - start > chunkSize) {
+                int split = nextLineStart(start + (end - start) / 2);
+                if (split > start && split < end) {
+                    ChunkTask left = new ChunkTask(buffer, start, split, chunkSize, skipErrors);
+                    ChunkTask right = new ChunkTask(buffer, split, end, chunkSize, skipErrors);
+                    left.fork();
+                    List<Chunk> rightResult = right.compute();
+                    List<Chunk> result = left.join();
+                    result.addAll(rightResult);
+                    return result;
+                }
+            }
+
+            List<Chunk> result = new ArrayList<>();
+            result.add(parseChunk());
+            return result;
+        }
+
+        private Chunk parseChunk() {
+            Chunk chunk = new Chunk();
+            BookRecordParser parser = new BookRecordParser(buffer, start, end, 1);
+            while (true) {
+                try {
+                    if (!parser.next()) {
+                        break;
+                    }
+                    chunk.add(parser.toBook(), parser.getLine());
+                } catch (BookRecordParser.ParseException e) {
+                    if (!skipErrors) {
+                        // номера строк внутри куска считаются с единицы
+                        throw e.shiftLines(countLines(0, start));
+                    }
+                    chunk.skipped.add(e);
+                    parser.skipLine();
+                } catch (IllegalArgumentException e) {
+                    // запись разобралась, но книга из неё не создаётся (например, пустое название)
+                    if (!skipErrors) {
+                        throw e;
+                    }
+                    chunk.skipped.add(new BookRecordParser.ParseException(e.getMessage(), parser.getLine()));
+                }
+            }
+            chunk.lineBreaks = countLines(start, end);
+            return chunk;
+        }
+
+        private int nextLineStart(int from) {
+            for (int i = from; i < end; i++) {
+                if (buffer.get(i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return end;
+        }
+
+        private int countLines(int from, int to) {
+            int lines = 0;
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == '\n') {
+                    lines++;
+                }
+            }
+            return lines;
+        }
+    }
+}
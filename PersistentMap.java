@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+// Неизменяемый словарь: put и remove возвращают новую версию, а прежняя остаётся целой.
+// Ключи разложены по дереву по 5 бит хеша на уровень; изменение копирует только узлы
+// на пути к ключу (не больше 7 массивов по 64 ссылки), остальные узлы версии делят между собой.
+// Когда совпадают все 32 бита хеша, ключи лежат в узле последнего уровня простым списком.
+public final class PersistentMap<K, V> {
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+    private static final int BITS = 5;
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            if (shift >= Integer.SIZE) {
+                for (int i = 0; i < node.slots.length; i += 2) {
+                    if (node.slots[i].equals(key)) {
+                        return (V) node.slots[i + 1];
+                    }
+                }
+                return null;
+            }
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            int index = node.index(bit);
+            Object slotKey = node.slots[index];
+            if (slotKey == null) {
+                node = (Node) node.slots[index + 1];
+            } else {
+                return slotKey.equals(key) ? (V) node.slots[index + 1] : null;
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    // значение null не хранится: для удаления есть remove
+    public PersistentMap<K, V> put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Ключ и значение не могут быть null");
+        }
+        int[] added = new int[1];
+        Node newRoot = (root == null) ? pair(0, hash(key), key, value, 0, null, null)
+                : put(root, 0, hash(key), key, value, added);
+        if (root == null) {
+            added[0] = 1;
+        }
+        return (newRoot == root) ? this : new PersistentMap<>(newRoot, size + added[0]);
+    }
+
+    public PersistentMap<K, V> remove(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node newRoot = remove(root, 0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return (newRoot == null) ? empty() : new PersistentMap<>(newRoot, size - 1);
+    }
+
+    // обходит пары в порядке дерева; порядок одинаков у всех версий с теми же ключами
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            forEach(root, 0, (BiConsumer<Object, Object>) action);
+        }
+    }
+
+    public List<K> keys() {
+        List<K> keys = new ArrayList<>(size);
+        forEach((key, value) -> keys.add(key));
+        return keys;
+    }
+
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size);
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    private static void forEach(Node node, int shift, BiConsumer<Object, Object> action) {
+        for (int i = 0; i < node.slots.length; i += 2) {
+            if (node.slots[i] == null) {
+                forEach((Node) node.slots[i + 1], shift + BITS, action);
+            } else {
+                action.accept(node.slots[i], node.slots[i + 1]);
+            }
+        }
+    }
+
+    private static Node put(Node node, int shift, int hash, Object key, Object value, int[] added) {
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < node.slots.length; i += 2) {
+                if (node.slots[i].equals(key)) {
+                    return (node.slots[i + 1] == value) ? node : node.with(i + 1, value);
+                }
+            }
+            Object[] slots = Arrays.copyOf(node.slots, node.slots.length + 2);
+            slots[node.slots.length] = key;
+            slots[node.slots.length + 1] = value;
+            added[0] = 1;
+            return new Node(0, slots);
+        }
+
+        int bit = bit(hash, shift);
+        int index = node.index(bit);
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 2];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = key;
+            slots[index + 1] = value;
+            System.arraycopy(node.slots, index, slots, index + 2, node.slots.length - index);
+            added[0] = 1;
+            return new Node(node.bitmap | bit, slots);
+        }
+
+        Object slotKey = node.slots[index];
+        Object slotValue = node.slots[index + 1];
+        if (slotKey == null) {
+            Node child = put((Node) slotValue, shift + BITS, hash, key, value, added);
+            return (child == slotValue) ? node : node.with(index + 1, child);
+        }
+        if (slotKey.equals(key)) {
+            return (slotValue == value) ? node : node.with(index + 1, value);
+        }
+        // место занято другим ключом: оба уходят на уровень ниже
+        Node child = pair(shift + BITS, hash(slotKey), slotKey, slotValue, hash, key, value);
+        Object[] slots = node.slots.clone();
+        slots[index] = null;
+        slots[index + 1] = child;
+        added[0] = 1;
+        return new Node(node.bitmap, slots);
+    }
+
+    // узел с одной парой (key2 == null) или с двумя
+    private static Node pair(int shift, int hash1, Object key1, Object value1, int hash2, Object key2, Object value2) {
+        if (key2 == null) {
+            return new Node(bit(hash1, shift), new Object[] {key1, value1});
+        }
+        if (shift >= Integer.SIZE) {
+            return new Node(0, new Object[] {key1, value1, key2, value2});
+        }
+        int bit1 = bit(hash1, shift);
+        int bit2 = bit(hash2, shift);
+        if (bit1 == bit2) {
+            return new Node(bit1, new Object[] {null, pair(shift + BITS, hash1, key1, value1, hash2, key2, value2)});
+        }
+        return (Integer.compareUnsigned(bit1, bit2) < 0)
+                ? new Node(bit1 | bit2, new Object[] {key1, value1, key2, value2})
+                : new Node(bit1 | bit2, new Object[] {key2, value2, key1, value1});
+    }
+
+    // null, если узел опустел
+    private static Node remove(Node node, int shift, int hash, Object key) {
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < node.slots.length; i += 2) {
+                if (node.slots[i].equals(key)) {
+                    return (node.slots.length == 2) ? null : new Node(0, node.without(i));
+                }
+            }
+            return node;
+        }
+
+        int bit = bit(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = node.index(bit);
+        Object slotKey = node.slots[index];
+        if (slotKey == null) {
+            Node child = (Node) node.slots[index + 1];
+            Node newChild = remove(child, shift + BITS, hash, key);
+            if (newChild == child) {
+                return node;
+            }
+            if (newChild == null) {
+                return (node.bitmap == bit) ? null : new Node(node.bitmap & ~bit, node.without(index));
+            }
+            // одна оставшаяся пара поднимается на место дочернего узла
+            if (newChild.slots.length == 2 && newChild.slots[0] != null) {
+                Object[] slots = node.slots.clone();
+                slots[index] = newChild.slots[0];
+                slots[index + 1] = newChild.slots[1];
+                return new Node(node.bitmap, slots);
+            }
+            return node.with(index + 1, newChild);
+        }
+        if (!slotKey.equals(key)) {
+            return node;
+        }
+        return (node.bitmap == bit) ? null : new Node(node.bitmap & ~bit, node.without(index));
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    // на каждый установленный бит два слота: ключ и значение либо null и дочерний узел
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Node with(int slot, Object value) {
+            Object[] copy = slots.clone();
+            copy[slot] = value;
+            return new Node(bitmap, copy);
+        }
+
+        Object[] without(int index) {
+            Object[] copy = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 2, copy, index, slots.length - index - 2);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Кэш готового текста результатов частых запросов: книги автора и страницы жанра.
+// Вытеснение LRU по суммарной длине текста. Изменение книги сбрасывает только
+// записи её автора и жанра, остальной кэш остаётся.
+// Методы синхронизированы: в ConcurrentLibrary запросы идут под блокировкой чтения
+// из нескольких потоков одновременно.
+public class QueryCache {
+    public enum Kind { AUTHOR, GENRE }
+
+    // длина одного результата не больше этой доли ёмкости, иначе он не кэшируется
+    private static final int MAX_ENTRY_SHARE = 4;
+
+    private final long capacity;
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // все закэшированные страницы одного автора или жанра - для точечного сброса
+    private final HashMap<Key, List<Key>> keysByGroup = new HashMap<>();
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    // capacity - суммарная длина закэшированного текста в символах
+    public QueryCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized String get(Kind kind, String value, int offset, int limit) {
+        String text = entries.get(new Key(kind, value, offset, limit));
+        if (text == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return text;
+    }
+
+    public synchronized void put(Kind kind, String value, int offset, int limit, String text) {
+        if (text.length() > capacity / MAX_ENTRY_SHARE) {
+            return;
+        }
+        Key key = new Key(kind, value, offset, limit);
+        String previous = entries.put(key, text);
+        if (previous != null) {
+            size -= previous.length();
+        } else {
+            keysByGroup.computeIfAbsent(key.group(), g -> new ArrayList<>()).add(key);
+        }
+        size += text.length();
+
+        Iterator<Map.Entry<Key, String>> eldest = entries.entrySet().iterator();
+        while (size > capacity && eldest.hasNext()) {
+            Map.Entry<Key, String> entry = eldest.next();
+            eldest.remove();
+            size -= entry.getValue().length();
+            forget(entry.getKey());
+            evictions++;
+        }
+    }
+
+    // сбрасывает все страницы автора или жанра
+    public synchronized void invalidate(Kind kind, String value) {
+        if (keysByGroup.isEmpty()) {
+            return;
+        }
+        List<Key> keys = keysByGroup.remove(new Key(kind, value, -1, -1));
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys) {
+            String text = entries.remove(key);
+            if (text != null) {
+                size -= text.length();
+                invalidations++;
+            }
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized String describe() {
+        return "Кэш запросов: записей " + entries.size() + ", символов " + size + " из " + capacity +
+                ", попаданий " + hits + ", промахов " + misses +
+                ", вытеснено " + evictions + ", сброшено " + invalidations;
+    }
+
+    private void forget(Key key) {
+        Key group = key.group();
+        List<Key> keys = keysByGroup.get(group);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByGroup.remove(group);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final Kind kind;
+        private final String value;
+        private final int offset;
+        private final int limit;
+
+        Key(Kind kind, String value, int offset, int limit) {
+            this.kind = kind;
+            this.value = value;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        Key group() {
+            return new Key(kind, value, -1, -1);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return kind == other.kind && offset == other.offset && limit == other.limit && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, value, offset, limit);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+// Библиотека поверх папки сегментов (см. GenreSegmentStore): при открытии читается
+// только манифест, а книги жанра загружаются при первом запросе к этому жанру.
+// Число книг до полной загрузки берётся из манифеста. Остальные операции, в том числе
+// любые изменения, сначала загружают все жанры: проверке дубликатов и поиску нужна
+// вся библиотека. Поэтому, пока библиотека загружена не целиком, она не менялась.
+public class SegmentedLibrary extends Library {
+    private final String directory;
+    private final GenreSegmentStore store;
+    private final HashSet<String> loadedGenres = new HashSet<>();
+    private boolean materialized;
+
+    public SegmentedLibrary(String directory) throws IOException {
+        this.directory = directory;
+        this.store = GenreSegmentStore.open(directory);
+        if (!store.exists()) {
+            throw new IOException("В папке нет манифеста сегментов: " + directory);
+        }
+    }
+
+    // true, если загружены все жанры
+    public boolean isMaterialized() {
+        return materialized;
+    }
+
+    // пока загружены не все жанры, библиотека не менялась и совпадает с манифестом
+    @Override
+    public int countBooks() {
+        if (materialized) {
+            return super.countBooks();
+        }
+        int count = 0;
+        for (String genre : store.getGenres()) {
+            count += store.getBookCount(genre);
+        }
+        return count;
+    }
+
+    @Override
+    public void printBooksByGenre(String genre, int offset, int limit) {
+        // до загрузки первого жанра библиотека сама по себе пуста, а жанра может просто не быть
+        if (!materialized && genre != null && !genre.trim().isEmpty() && !store.contains(genre.trim())) {
+            System.out.println("Жанр \"" + genre + "\" не найден или пуст.");
+            return;
+        }
+        super.printBooksByGenre(genre, offset, limit);
+    }
+
+    @Override
+    public void saveSegments(String directory) {
+        // пока загружены не все жанры, изменений не было и своя папка уже актуальна
+        if (!materialized && store.isAt(directory)) {
+            System.out.println("Библиотека не менялась, сегменты не перезаписаны.");
+            return;
+        }
+        super.saveSegments(directory);
+    }
+
+    // выборкам по жанру достаточно этого жанра, остальным операциям нужны все
+    @Override
+    protected void beforeGenreAccess(String genre) {
+        loadGenre(genre);
+    }
+
+    @Override
+    protected void beforeAccess() {
+        materialize();
+    }
+
+    private void loadGenre(String genre) {
+        if (materialized || genre == null) {
+            return;
+        }
+        String key = genre.trim();
+        if (store.contains(key) && loadedGenres.add(key)) {
+            readSegments(directory, List.of(key));
+        }
+    }
+
+    private void materialize() {
+        if (!materialized) {
+            ArrayList<String> rest = new ArrayList<>();
+            for (String genre : store.getGenres()) {
+                if (!loadedGenres.contains(genre)) {
+                    rest.add(genre);
+                }
+            }
+            readSegments(directory, rest);
+            loadedGenres.addAll(rest);
+            materialized = true;
+        }
+    }
+}
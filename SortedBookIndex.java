@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Книги библиотеки, упорядоченные по comparator и поддерживаемые при каждом изменении.
+// Хранятся блоками не длиннее MAX_BLOCK: вставка и удаление сдвигают один блок,
+// а страница с любого места находится двоичным поиском по началам блоков,
+// поэтому выдача k книг стоит O(log n + k) без сортировки всей библиотеки.
+// comparator должен различать любые две книги библиотеки (например, добивать сравнение ключом).
+public class SortedBookIndex {
+    private static final int MAX_BLOCK = 512;
+
+    private final Comparator<Book> comparator;
+    private final ArrayList<ArrayList<Book>> blocks = new ArrayList<>();
+    // номер первой книги каждого блока; null после изменений, пересчитывается при чтении.
+    // volatile: в ConcurrentLibrary читатели под общей блокировкой пересчитывают его одновременно
+    private volatile int[] blockStarts;
+    private int size;
+
+    public SortedBookIndex(Comparator<Book> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(Book book) {
+        if (blocks.isEmpty()) {
+            blocks.add(new ArrayList<>());
+        }
+        int blockIndex = blockFor(book);
+        ArrayList<Book> block = blocks.get(blockIndex);
+        int position = Collections.binarySearch(block, book, comparator);
+        block.add((position < 0) ? -position - 1 : position, book);
+        if (block.size() > MAX_BLOCK) {
+            ArrayList<Book> tail = new ArrayList<>(block.subList(MAX_BLOCK / 2, block.size()));
+            block.subList(MAX_BLOCK / 2, block.size()).clear();
+            blocks.add(blockIndex + 1, tail);
+        }
+        size++;
+        blockStarts = null;
+    }
+
+    // Добавление многих книг сразу (загрузка, импорт): новые книги сортируются один раз
+    // и сливаются с уже имеющимися, вместо вставки каждой в свой блок
+    public void addAll(List<Book> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+        ArrayList<Book> incoming = new ArrayList<>(books);
+        incoming.sort(comparator);
+
+        ArrayList<Book> merged = new ArrayList<>(size + incoming.size());
+        int next = 0;
+        for (ArrayList<Book> block : blocks) {
+            for (Book book : block) {
+                while (next < incoming.size() && comparator.compare(incoming.get(next), book) < 0) {
+                    merged.add(incoming.get(next++));
+                }
+                merged.add(book);
+            }
+        }
+        merged.addAll(incoming.subList(next, incoming.size()));
+
+        // блоки заполняются на три четверти, чтобы следующие вставки не делили их сразу
+        blocks.clear();
+        int blockSize = MAX_BLOCK * 3 / 4;
+        for (int from = 0; from < merged.size(); from += blockSize) {
+            blocks.add(new ArrayList<>(merged.subList(from, Math.min(from + blockSize, merged.size()))));
+        }
+        size = merged.size();
+        blockStarts = null;
+    }
+
+    // false, если книги в индексе нет
+    public boolean remove(Book book) {
+        if (blocks.isEmpty()) {
+            return false;
+        }
+        int blockIndex = blockFor(book);
+        ArrayList<Book> block = blocks.get(blockIndex);
+        int position = Collections.binarySearch(block, book, comparator);
+        if (position < 0 || block.get(position) != book) {
+            // поля книги поменяли в обход библиотеки (например, setDate), и по порядку её не найти
+            return removeByScan(book);
+        }
+        removeAt(blockIndex, position);
+        return true;
+    }
+
+    // limit книг, начиная с offset-й по порядку; поток идёт по самим блокам, без копирования
+    public Stream<Book> page(int offset, int limit) {
+        if (offset >= size || limit == 0) {
+            return Stream.empty();
+        }
+        int[] starts = blockStarts();
+        int blockIndex = 0;
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= offset) {
+                blockIndex = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        ArrayList<List<Book>> parts = new ArrayList<>();
+        int skip = offset - starts[blockIndex];
+        int left = limit;
+        for (int i = blockIndex; i < blocks.size() && left > 0; i++) {
+            ArrayList<Book> block = blocks.get(i);
+            int end = (int) Math.min(block.size(), (long) skip + left);
+            parts.add(block.subList(skip, end));
+            left -= end - skip;
+            skip = 0;
+        }
+        return parts.stream().flatMap(List::stream);
+    }
+
+    // Сколько книг в начале порядка удовлетворяют before. before должен быть истинным на начальном
+    // отрезке порядка и ложным после него (например, "год меньше 1900" для порядка по году):
+    // так границы отрезка ищутся двоичным поиском, за O(log n)
+    public int countBefore(Predicate<Book> before) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            ArrayList<Book> block = blocks.get(middle);
+            if (before.test(block.get(block.size() - 1))) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == blocks.size()) {
+            return size;
+        }
+        ArrayList<Book> block = blocks.get(low);
+        int from = 0;
+        int to = block.size();
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (before.test(block.get(middle))) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return blockStarts()[low] + from;
+    }
+
+    // первый блок, последняя книга которого не меньше book (или последний блок)
+    private int blockFor(Book book) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            ArrayList<Book> block = blocks.get(middle);
+            if (comparator.compare(block.get(block.size() - 1), book) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private boolean removeByScan(Book book) {
+        for (int i = 0; i < blocks.size(); i++) {
+            ArrayList<Book> block = blocks.get(i);
+            for (int j = 0; j < block.size(); j++) {
+                if (block.get(j) == book) {
+                    removeAt(i, j);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void removeAt(int blockIndex, int position) {
+        ArrayList<Book> block = blocks.get(blockIndex);
+        block.remove(position);
+        if (block.isEmpty()) {
+            blocks.remove(blockIndex);
+        }
+        size--;
+        blockStarts = null;
+    }
+
+    private int[] blockStarts() {
+        int[] starts = blockStarts;
+        if (starts == null) {
+            starts = new int[blocks.size()];
+            int start = 0;
+            for (int i = 0; i < blocks.size(); i++) {
+                starts[i] = start;
+                start += blocks.get(i).size();
+            }
+            blockStarts = starts;
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,21 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+// Словарь повторяющихся строк (жанры, авторы): одинаковые значения у разных книг
+// ссылаются на один экземпляр строки. Словарь только растёт, поэтому годится
+// для значений, различных вариантов которых намного меньше, чем книг.
+final class StringDictionary {
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+
+    String intern(String value) {
+        String existing = values.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        existing = values.putIfAbsent(value, value);
+        return (existing != null) ? existing : value;
+    }
+
+    int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Индекс для поиска книг по началу и по части строки (названия или автора).
+// Строки хранятся в нижнем регистре в отсортированном словаре: поиск по началу -
+// это диапазон словаря. Для поиска по части строки у каждой строки есть номер,
+// а для каждой триграммы - отсортированный список номеров строк, где она встречается.
+// Нечёткий поиск обходит тот же словарь как префиксное дерево (см. findAtDistance).
+public class TextSearchIndex {
+    private final TreeMap<String, Term> terms = new TreeMap<>();
+    private final HashMap<Integer, Term> termsById = new HashMap<>();
+    private final HashMap<Long, Postings> postings = new HashMap<>();
+    private int nextTermId;
+
+    public void add(String text, Book book) {
+        Term term = terms.get(text);
+        if (term == null) {
+            term = new Term(nextTermId++, text);
+            terms.put(text, term);
+            termsById.put(term.id, term);
+            for (long trigram : trigrams(text)) {
+                postings.computeIfAbsent(trigram, t -> new Postings()).add(term.id);
+            }
+        }
+        term.books.add(book);
+    }
+
+    public void remove(String text, Book book) {
+        Term term = terms.get(text);
+        if (term == null) {
+            return;
+        }
+        for (int i = 0; i < term.books.size(); i++) {
+            if (term.books.get(i) == book) {
+                term.books.remove(i);
+                break;
+            }
+        }
+        if (term.books.isEmpty()) {
+            terms.remove(text);
+            termsById.remove(term.id);
+            for (long trigram : trigrams(text)) {
+                Postings list = postings.get(trigram);
+                if (list != null && list.remove(term.id) && list.size == 0) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+    }
+
+    // query уже приведён к нижнему регистру
+    public void findByPrefix(String query, int limit, LinkedHashSet<Book> result) {
+        Map<String, Term> range = terms.subMap(query, true, query + Character.MAX_VALUE, false);
+        for (Term term : range.values()) {
+            if (!collect(term, limit, result)) {
+                return;
+            }
+        }
+    }
+
+    public void findBySubstring(String query, int limit, LinkedHashSet<Book> result) {
+        if (query.length() < 3) {
+            // у короткого запроса нет триграмм, зато совпадений обычно много и хватает начала словаря
+            for (Term term : terms.values()) {
+                if (term.text.contains(query) && !collect(term, limit, result)) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        long[] queryTrigrams = trigrams(query);
+        Postings[] lists = new Postings[queryTrigrams.length];
+        for (int i = 0; i < queryTrigrams.length; i++) {
+            lists[i] = postings.get(queryTrigrams[i]);
+            if (lists[i] == null) {
+                return;
+            }
+        }
+        // пересечение начинается с самого короткого списка
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] candidates = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = intersect(candidates, count, lists[i]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Term term = termsById.get(candidates[i]);
+            // триграммы могут совпасть и без вхождения всей строки
+            if (term.text.contains(query) && !collect(term, limit, result)) {
+                return;
+            }
+        }
+    }
+
+    // Строки словаря ровно в distance правках (вставка, удаление или замена символа) от query.
+    // Словарь обходится как префиксное дерево: следующий символ после префикса находится
+    // прыжком по TreeMap, а для каждого префикса ведётся строка расстояний Левенштейна до
+    // начал query. Если все её значения больше distance, продолжения префикса не подойдут
+    // и ветка отсекается, поэтому просматривается малая часть словаря.
+    public void findAtDistance(String query, int distance, int limit, LinkedHashSet<Book> result) {
+        if (result.size() >= limit) {
+            return;
+        }
+        // строки расстояний по глубине префикса переиспользуются на всём обходе и создаются,
+        // только когда обход до этой глубины доходит: отсечение обычно останавливает его задолго
+        // до длины query, а заранее выделенная таблица росла бы как квадрат длины запроса
+        int[][] rows = new int[query.length() + distance + 2][];
+        rows[0] = new int[query.length() + 1];
+        for (int j = 0; j <= query.length(); j++) {
+            rows[0][j] = j;
+        }
+        walk("", rows, query, distance, limit, result);
+    }
+
+    // расстояние Левенштейна между строками
+    public static int editDistance(String a, String b) {
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            row = nextRow(row, b, a.charAt(i));
+        }
+        return row[b.length()];
+    }
+
+    private boolean walk(String prefix, int[][] rows, String query, int distance, int limit,
+                         LinkedHashSet<Book> result) {
+        int depth = prefix.length();
+        int[] row = rows[depth];
+        if (row[query.length()] == distance) {
+            Term term = terms.get(prefix);
+            if (term != null && !collect(term, limit, result)) {
+                return false;
+            }
+        }
+
+        String next = terms.higherKey(prefix);
+        while (next != null && next.startsWith(prefix)) {
+            char c = next.charAt(depth);
+            // префикс длиннее query больше чем на distance символов уже не подойдёт
+            if (depth + 1 < rows.length && rows[depth + 1] == null) {
+                rows[depth + 1] = new int[query.length() + 1];
+            }
+            if (depth + 1 < rows.length && fillRow(row, rows[depth + 1], query, c) <= distance
+                    && !walk(prefix + c, rows, query, distance, limit, result)) {
+                return false;
+            }
+            if (c == Character.MAX_VALUE) {
+                break;
+            }
+            // все строки с продолжением c пройдены - прыжок к следующему символу
+            next = terms.ceilingKey(prefix + (char) (c + 1));
+        }
+        return true;
+    }
+
+    private static int[] nextRow(int[] row, String query, char c) {
+        int[] next = new int[row.length];
+        fillRow(row, next, query, c);
+        return next;
+    }
+
+    // строка расстояний после добавления к префиксу символа c; возвращает её минимум
+    private static int fillRow(int[] row, int[] next, String query, char c) {
+        next[0] = row[0] + 1;
+        int min = next[0];
+        for (int j = 1; j < row.length; j++) {
+            int replace = row[j - 1] + ((query.charAt(j - 1) == c) ? 0 : 1);
+            next[j] = Math.min(replace, Math.min(row[j], next[j - 1]) + 1);
+            min = Math.min(min, next[j]);
+        }
+        return min;
+    }
+
+    private static boolean collect(Term term, int limit, LinkedHashSet<Book> result) {
+        for (Book book : term.books) {
+            if (result.size() >= limit) {
+                return false;
+            }
+            result.add(book);
+        }
+        return result.size() < limit;
+    }
+
+    private static int intersect(int[] candidates, int count, Postings list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < list.size; i++) {
+            while (j < list.size && list.ids[j] < candidates[i]) {
+                j++;
+            }
+            if (j < list.size && list.ids[j] == candidates[i]) {
+                candidates[kept++] = candidates[i];
+            }
+        }
+        return kept;
+    }
+
+    private static long[] trigrams(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+        long[] result = new long[text.length() - 2];
+        int count = 0;
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            long trigram = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            boolean seen = false;
+            for (int k = 0; k < count; k++) {
+                if (result[k] == trigram) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (!seen) {
+                result[count++] = trigram;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static class Term {
+        private final int id;
+        private final String text;
+        private final List<Book> books = new ArrayList<>(1);
+
+        Term(int id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    // Номера строк по возрастанию. Номера выдаются по порядку, поэтому
+    // новая строка всегда дописывается в конец.
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+}